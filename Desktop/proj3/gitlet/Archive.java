@@ -0,0 +1,272 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static gitlet.Main.GITLET_BLOBS;
+
+/** The "archive" command's writers, which put the files of a commit into a
+ *  tar or zip archive written to a channel, reading each blob straight
+ *  from the object store: no working tree is written.  Whole blobs of a
+ *  loose store are copied to a tar with FileChannel.transferTo.  Zip
+ *  entries are compressed in parallel, BATCH_SIZE files at a time, and
+ *  written in order; an entry that does not shrink is stored.
+ *  @author
+ */
+class Archive {
+
+    /** Files compressed at once for a zip. */
+    static final int BATCH_SIZE = 256;
+
+    /** The size of a tar block. */
+    private static final int BLOCK = 512;
+
+    /** The longest name a ustar header holds; longer ones get a pax
+     *  header. */
+    private static final int TAR_NAME_MAX = 100;
+
+    /** An archive of FILES, a map from file names to blob IDs, dated
+     *  TIMESTAMP. */
+    Archive(Map<String, String> files, ZonedDateTime timeStamp) {
+        _files = new TreeMap<>(files);
+        _timeStamp = timeStamp;
+        _loose = ObjectStore.local() instanceof LooseStore;
+    }
+
+    /** Write the archive as a tar to OUT. */
+    void writeTar(WritableByteChannel out) throws IOException {
+        long mtime = _timeStamp.toEpochSecond();
+        for (Map.Entry<String, String> entry : _files.entrySet()) {
+            String name = entry.getKey();
+            String id = entry.getValue();
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (nameBytes.length > TAR_NAME_MAX) {
+                byte[] pax = paxRecord("path", name);
+                writeAll(out, tarHeader("././@PaxHeader", pax.length, mtime, 'x'));
+                writeAll(out, padded(pax));
+                nameBytes = Utils.sha1(name).getBytes(StandardCharsets.US_ASCII);
+            }
+
+            File loose = _loose ? Utils.join(GITLET_BLOBS, id) : null;
+            if (loose != null && loose.isFile()) {
+                long size = loose.length();
+                writeAll(out, tarHeader(nameBytes, size, mtime, '0'));
+                try (FileChannel in = FileChannel.open(loose.toPath(), StandardOpenOption.READ)) {
+                    for (long done = 0; done < size; ) {
+                        done += in.transferTo(done, size - done, out);
+                    }
+                }
+                Trace.count("archive.transferred", size);
+                writeAll(out, ByteBuffer.allocate(padding(size)));
+            } else {
+                byte[] contents = Blob.read(id);
+                writeAll(out, tarHeader(nameBytes, contents.length, mtime, '0'));
+                writeAll(out, padded(contents));
+            }
+        }
+        writeAll(out, ByteBuffer.allocate(2 * BLOCK));
+    }
+
+    /** Write the archive as a zip to OUT. */
+    void writeZip(WritableByteChannel out) throws IOException {
+        if (_files.size() >= 0xFFFF) {
+            Main.exitWithError("Too many files for a zip archive.");
+        }
+        int[] dosTime = dosTime();
+        List<String> names = new ArrayList<>(_files.keySet());
+        ByteArrayOutputStream central = new ByteArrayOutputStream();
+        long offset = 0;
+        for (int start = 0; start < names.size(); start += BATCH_SIZE) {
+            List<ZipEntry> batch = names.subList(start, Math.min(names.size(), start + BATCH_SIZE))
+                .parallelStream().map(this::compress).toList();
+            for (ZipEntry entry : batch) {
+                if (offset + entry.data.length > 0xFFFFFFFFL) {
+                    Main.exitWithError("Archive too large for a zip; use tar.");
+                }
+                ByteBuffer local = littleEndian(30 + entry.name.length);
+                local.putInt(0x04034b50).putShort((short) 20).putShort(UTF8_FLAG)
+                    .putShort(entry.method).putShort((short) dosTime[0])
+                    .putShort((short) dosTime[1]).putInt(entry.crc)
+                    .putInt(entry.data.length).putInt((int) entry.size)
+                    .putShort((short) entry.name.length).putShort((short) 0)
+                    .put(entry.name);
+                writeAll(out, local.flip());
+                writeAll(out, ByteBuffer.wrap(entry.data));
+
+                ByteBuffer header = littleEndian(46 + entry.name.length);
+                header.putInt(0x02014b50).putShort((short) 0x0314).putShort((short) 20)
+                    .putShort(UTF8_FLAG).putShort(entry.method)
+                    .putShort((short) dosTime[0]).putShort((short) dosTime[1])
+                    .putInt(entry.crc).putInt(entry.data.length).putInt((int) entry.size)
+                    .putShort((short) entry.name.length).putShort((short) 0)
+                    .putShort((short) 0).putShort((short) 0).putShort((short) 0)
+                    .putInt(0100644 << 16).putInt((int) offset).put(entry.name);
+                central.write(header.array());
+                offset += local.capacity() + entry.data.length;
+            }
+        }
+        byte[] directory = central.toByteArray();
+        writeAll(out, ByteBuffer.wrap(directory));
+        ByteBuffer end = littleEndian(22);
+        end.putInt(0x06054b50).putShort((short) 0).putShort((short) 0)
+            .putShort((short) names.size()).putShort((short) names.size())
+            .putInt(directory.length).putInt((int) offset).putShort((short) 0);
+        writeAll(out, end.flip());
+    }
+
+    /** A compressed zip entry. */
+    private static class ZipEntry {
+        /** The file name, in UTF-8. */
+        byte[] name;
+        /** The compression method: 8 (deflated) or 0 (stored). */
+        short method;
+        /** The CRC-32 of the contents. */
+        int crc;
+        /** The length of the contents. */
+        long size;
+        /** The contents, compressed if method is 8. */
+        byte[] data;
+    }
+
+    /** Return the zip entry of file NAME. */
+    private ZipEntry compress(String name) {
+        byte[] contents = Blob.read(_files.get(name));
+        ZipEntry result = new ZipEntry();
+        result.name = name.getBytes(StandardCharsets.UTF_8);
+        result.size = contents.length;
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+        result.crc = (int) crc.getValue();
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(contents);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(contents.length / 2 + 64);
+        byte[] buffer = new byte[1 << 16];
+        while (!deflater.finished() && compressed.size() < contents.length) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        boolean smaller = deflater.finished() && compressed.size() < contents.length;
+        deflater.end();
+        result.method = (short) (smaller ? 8 : 0);
+        result.data = smaller ? compressed.toByteArray() : contents;
+        Trace.count("archive.compressed");
+        return result;
+    }
+
+    /** Return the DOS time and date of the archive, no earlier than 1980
+     *  as DOS dates cannot be. */
+    private int[] dosTime() {
+        ZonedDateTime t = _timeStamp.getYear() < 1980
+            ? _timeStamp.withYear(1980).withDayOfYear(1).withHour(0).withMinute(0).withSecond(0)
+            : _timeStamp;
+        return new int[] {
+            (t.getHour() << 11) | (t.getMinute() << 5) | (t.getSecond() / 2),
+            ((t.getYear() - 1980) << 9) | (t.getMonthValue() << 5) | t.getDayOfMonth()
+        };
+    }
+
+    /** Return a ustar header for an entry named NAME of SIZE bytes,
+     *  modified at MTIME, of type TYPE. */
+    private static ByteBuffer tarHeader(String name, long size, long mtime, char type) {
+        return tarHeader(name.getBytes(StandardCharsets.UTF_8), size, mtime, type);
+    }
+
+    /** Return a ustar header for an entry named NAME, in UTF-8, of SIZE
+     *  bytes, modified at MTIME, of type TYPE. */
+    private static ByteBuffer tarHeader(byte[] name, long size, long mtime, char type) {
+        byte[] header = new byte[BLOCK];
+        System.arraycopy(name, 0, header, 0, name.length);
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, mtime);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        // The checksum is computed with its own field taken as spaces
+        for (int i = 148; i < 156; i += 1) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        octal(header, 148, 7, checksum);
+        return ByteBuffer.wrap(header);
+    }
+
+    /** Write VALUE into the field of HEADER at OFFSET, of WIDTH bytes, as
+     *  zero-padded octal ending in a NUL. */
+    private static void octal(byte[] header, int offset, int width, long value) {
+        String digits = Long.toOctalString(value);
+        if (digits.length() > width - 1) {
+            throw new IllegalArgumentException("tar field overflow");
+        }
+        digits = "0".repeat(width - 1 - digits.length()) + digits;
+        System.arraycopy(digits.getBytes(StandardCharsets.US_ASCII), 0, header, offset, width - 1);
+        header[offset + width - 1] = 0;
+    }
+
+    /** Return the pax extended header record setting KEY to VALUE. */
+    private static byte[] paxRecord(String key, String value) {
+        String body = " " + key + "=" + value + "\n";
+        int length = body.getBytes(StandardCharsets.UTF_8).length;
+        int total = length + Integer.toString(length).length();
+        if (Integer.toString(total).length() != Integer.toString(length).length()) {
+            total += 1;
+        }
+        return (total + body).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return the number of zero bytes that follow SIZE bytes of data to
+     *  fill a tar block. */
+    private static int padding(long size) {
+        return (int) ((BLOCK - size % BLOCK) % BLOCK);
+    }
+
+    /** Return DATA followed by zeros to fill a tar block. */
+    private static ByteBuffer padded(byte[] data) {
+        ByteBuffer result = ByteBuffer.allocate(data.length + padding(data.length));
+        result.put(data);
+        return result.rewind();
+    }
+
+    /** Return an empty little-endian buffer of SIZE bytes. */
+    private static ByteBuffer littleEndian(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Write all of BUFFER to OUT. */
+    private static void writeAll(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /** The general-purpose flag marking names as UTF-8. */
+    private static final short UTF8_FLAG = 0x0800;
+
+    /** The files archived, by name. */
+    private final TreeMap<String, String> _files;
+
+    /** The time of the commit archived. */
+    private final ZonedDateTime _timeStamp;
+
+    /** True iff the repository has a loose object store. */
+    private final boolean _loose;
+}
@@ -0,0 +1,561 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/** An object store in one file of PAGE_SIZE-byte pages, indexed by a
+ *  B+tree.  A key is a byte giving the kind of an object followed by the
+ *  20 bytes of its ID; a leaf maps keys to the offset and length of the
+ *  object's contents, which are stored between the pages, where they were
+ *  appended.
+ *
+ *  Nothing in the file is ever overwritten but its header, page 0, which
+ *  has two slots, each holding a generation number, the root page, the
+ *  length of the file in use and a checksum.  The slot with the highest
+ *  generation and a good checksum is current.  Writes are buffered until
+ *  flush, which appends the contents, then copies of the nodes they change
+ *  (copy-on-write, up to a new root), forces them to disk and only then
+ *  writes the other header slot.  A crash at any point thus leaves either
+ *  the old tree or the new one, and at worst some garbage past the end.
+ *  Flushes are serialized between processes by a lock on the file.
+ *
+ *  Pages are read through memory mappings of the file, and decoded nodes
+ *  are kept in a buffer pool of POOL_SIZE nodes, least recently used
+ *  first out.  Since a written page never changes, the pool is never
+ *  invalidated.
+ *  @author
+ */
+class BTreeStore implements ObjectStore {
+
+    /** Name of the file within a .gitlet directory. */
+    static final String FILE_NAME = "objects.db";
+
+    /** Size of a page, and of a node. */
+    static final int PAGE_SIZE = 4096;
+
+    /** Number of decoded nodes kept in memory. */
+    static final int POOL_SIZE = 4096;
+
+    /** First bytes of a header slot: "GITLETDB". */
+    private static final long MAGIC = 0x4749544c45544442L;
+
+    /** Offset of the second header slot. */
+    private static final int SLOT_SIZE = 512;
+
+    /** Bytes of a header slot covered by its checksum: the magic number,
+     *  generation, root, end and object count. */
+    private static final int HEADER_LENGTH = 5 * 8;
+
+    /** Length of a key. */
+    private static final int KEY_LENGTH = 21;
+
+    /** Bytes of a node before its entries: the type and the key count. */
+    private static final int NODE_HEADER = 3;
+
+    /** Most keys in a leaf, whose entries are a key, offset and length. */
+    static final int LEAF_MAX = (PAGE_SIZE - NODE_HEADER) / (KEY_LENGTH + 8 + 4);
+
+    /** Most keys in an internal node, whose entries are a key and the page
+     *  of the child to its right, after the page of its first child. */
+    static final int INTERNAL_MAX = (PAGE_SIZE - NODE_HEADER - 8) / (KEY_LENGTH + 8);
+
+    /** Size of the memory mappings through which the file is read. */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    /** Order of keys. */
+    private static final Comparator<byte[]> KEY_ORDER = Arrays::compareUnsigned;
+
+    /** The store in FILE, which must exist. */
+    BTreeStore(File file) {
+        _file = file;
+        try {
+            _channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+            readHeader();
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Create an empty store in the .gitlet directory DIR. */
+    static void create(File dir) {
+        ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+        page.put(header(0, 0, PAGE_SIZE, 0));
+        Utils.writeContents(Utils.join(dir, FILE_NAME), page.array());
+    }
+
+    @Override
+    public synchronized boolean contains(String kind, String id) {
+        byte[] key = key(kind, id);
+        return key != null && (_pending.containsKey(key) || find(key) != null);
+    }
+
+    @Override
+    public synchronized byte[] read(String kind, String id) {
+        byte[] key = key(kind, id);
+        if (key == null) {
+            return null;
+        }
+        byte[] pending = _pending.get(key);
+        if (pending != null) {
+            return pending;
+        }
+        long[] location = find(key);
+        if (location == null) {
+            return null;
+        }
+        Trace.count("objects.read");
+        Trace.count("objects.bytesRead", location[1]);
+        byte[] result = new byte[(int) location[1]];
+        slice(location[0], result.length).get(result);
+        return result;
+    }
+
+    @Override
+    public synchronized void write(String kind, String id, byte[] contents) {
+        byte[] key = key(kind, id);
+        if (key == null) {
+            throw new IllegalArgumentException("bad object id: " + id);
+        }
+        if (!_pending.containsKey(key) && find(key) == null) {
+            _pending.put(key, contents);
+        }
+    }
+
+    @Override
+    public synchronized List<String> list(String kind) {
+        byte kindByte = kindByte(kind);
+        TreeSet<String> result = new TreeSet<>();
+        if (_root != 0) {
+            collect(node(_root), kindByte, result);
+        }
+        for (byte[] key : _pending.keySet()) {
+            if (key[0] == kindByte) {
+                result.add(HexFormat.of().formatHex(key, 1, KEY_LENGTH));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (_pending.isEmpty()) {
+            return;
+        }
+        try (Trace.Span span = Trace.span("objects.flush");
+             FileLock lock = _channel.lock()) {
+            // Another process may have added objects since we looked
+            readHeader();
+            long end = _end;
+            long count = _count;
+            Node root = _root == 0 ? new Node(true) : node(_root);
+            ByteArrayOutputStream values = new ByteArrayOutputStream();
+            for (Map.Entry<byte[], byte[]> entry : _pending.entrySet()) {
+                if (find(root, entry.getKey()) != null) {
+                    continue;
+                }
+                byte[] contents = entry.getValue();
+                root = insert(root, entry.getKey(), new long[] { end + values.size(), contents.length });
+                values.write(contents);
+                count += 1;
+                if (root.keys.size() > max(root)) {
+                    Node left = root;
+                    Node right = new Node(left.leaf);
+                    root = new Node(false);
+                    root.keys.add(split(left, right));
+                    root.addChild(0, left);
+                    root.addChild(1, right);
+                }
+            }
+            Trace.count("objects.written", count - _count);
+            writeFully(ByteBuffer.wrap(values.toByteArray()), end);
+            end += values.size();
+
+            ByteArrayOutputStream pages = new ByteArrayOutputStream();
+            long firstPage = (end + PAGE_SIZE - 1) / PAGE_SIZE;
+            long rootPage = root.page != 0 ? root.page : writeNode(root, firstPage, pages);
+            writeFully(ByteBuffer.wrap(pages.toByteArray()), firstPage * PAGE_SIZE);
+            Trace.count("objects.pagesWritten", pages.size() / PAGE_SIZE);
+            _channel.force(true);
+
+            // Only now can the new tree become current
+            _generation += 1;
+            _root = rootPage;
+            _end = firstPage * PAGE_SIZE + pages.size();
+            _count = count;
+            writeFully(header(_generation, _root, _end, _count),
+                       (_generation % 2) * SLOT_SIZE);
+            _channel.force(false);
+            _pending.clear();
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+        _segments.clear();
+    }
+
+    /** Return the number of objects stored, not counting unflushed ones. */
+    synchronized long size() {
+        return _count;
+    }
+
+    /** A node of the tree.  A node read from a page is never changed; one
+     *  with page 0 has not been written, and is changed in place. */
+    private static class Node {
+        /** A node that is a leaf iff LEAF. */
+        Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+
+        /** Return an unwritten copy of this node. */
+        Node copy() {
+            Node result = new Node(leaf);
+            result.keys.addAll(keys);
+            result.values.addAll(values);
+            result.children.addAll(children);
+            result.dirty.addAll(dirty);
+            return result;
+        }
+
+        /** Insert CHILD, an unwritten node, as child I. */
+        void addChild(int i, Node child) {
+            children.add(i, 0L);
+            dirty.add(i, child);
+        }
+
+        /** True iff this is a leaf. */
+        final boolean leaf;
+        /** The page holding this node, or 0 if unwritten. */
+        long page;
+        /** The keys, in order. */
+        final List<byte[]> keys = new ArrayList<>();
+        /** In a leaf, the offset and length of the contents of each key. */
+        final List<long[]> values = new ArrayList<>();
+        /** In an internal node, the pages of the keys.size() + 1 children,
+         *  0 for those that are unwritten. */
+        final List<Long> children = new ArrayList<>();
+        /** The unwritten children, null for those that are written. */
+        final List<Node> dirty = new ArrayList<>();
+    }
+
+    /** Return the location of the contents of KEY in the current tree, or
+     *  null if it is absent. */
+    private long[] find(byte[] key) {
+        return _root == 0 ? null : find(node(_root), key);
+    }
+
+    /** Return the location of the contents of KEY under NODE, or null. */
+    private long[] find(Node node, byte[] key) {
+        while (!node.leaf) {
+            node = child(node, childIndex(node, key));
+        }
+        int i = Collections.binarySearch(node.keys, key, KEY_ORDER);
+        return i >= 0 ? node.values.get(i) : null;
+    }
+
+    /** Return NODE, or an unwritten copy if NODE is written, with KEY,
+     *  which must be absent, mapped to LOCATION below it.  A child that
+     *  overflows is split; NODE itself may be left overflowing. */
+    private Node insert(Node node, byte[] key, long[] location) {
+        if (node.page != 0) {
+            node = node.copy();
+        }
+        if (node.leaf) {
+            int i = -Collections.binarySearch(node.keys, key, KEY_ORDER) - 1;
+            node.keys.add(i, key);
+            node.values.add(i, location);
+            return node;
+        }
+        int i = childIndex(node, key);
+        Node child = insert(child(node, i), key, location);
+        node.children.set(i, 0L);
+        node.dirty.set(i, child);
+        if (child.keys.size() > max(child)) {
+            Node right = new Node(child.leaf);
+            node.keys.add(i, split(child, right));
+            node.addChild(i + 1, right);
+        }
+        return node;
+    }
+
+    /** Move the upper half of the entries of NODE into RIGHT, an empty
+     *  node of the same type, and return the key separating them. */
+    private static byte[] split(Node node, Node right) {
+        int mid = node.keys.size() / 2;
+        if (node.leaf) {
+            right.keys.addAll(node.keys.subList(mid, node.keys.size()));
+            right.values.addAll(node.values.subList(mid, node.values.size()));
+            node.keys.subList(mid, node.keys.size()).clear();
+            node.values.subList(mid, node.values.size()).clear();
+            return right.keys.get(0);
+        }
+        byte[] separator = node.keys.get(mid);
+        right.keys.addAll(node.keys.subList(mid + 1, node.keys.size()));
+        right.children.addAll(node.children.subList(mid + 1, node.children.size()));
+        right.dirty.addAll(node.dirty.subList(mid + 1, node.dirty.size()));
+        node.keys.subList(mid, node.keys.size()).clear();
+        node.children.subList(mid + 1, node.children.size()).clear();
+        node.dirty.subList(mid + 1, node.dirty.size()).clear();
+        return separator;
+    }
+
+    /** Append to PAGES the unwritten nodes under NODE, children first,
+     *  numbering them from FIRSTPAGE, and return the page of NODE. */
+    private long writeNode(Node node, long firstPage, ByteArrayOutputStream pages) {
+        for (int i = 0; i < node.dirty.size(); i += 1) {
+            Node child = node.dirty.get(i);
+            if (child != null) {
+                node.children.set(i, writeNode(child, firstPage, pages));
+                node.dirty.set(i, null);
+            }
+        }
+        node.page = firstPage + pages.size() / PAGE_SIZE;
+        pages.writeBytes(encode(node).array());
+        _pool.put(node.page, node);
+        return node.page;
+    }
+
+    /** Add to RESULT the IDs of the objects of kind KIND under NODE. */
+    private void collect(Node node, byte kind, TreeSet<String> result) {
+        if (node.leaf) {
+            for (byte[] key : node.keys) {
+                if (key[0] == kind) {
+                    result.add(HexFormat.of().formatHex(key, 1, KEY_LENGTH));
+                }
+            }
+            return;
+        }
+        // Child I holds the keys between keys I - 1 and I
+        for (int i = 0; i <= node.keys.size(); i += 1) {
+            if ((i == 0 || node.keys.get(i - 1)[0] <= kind)
+                && (i == node.keys.size() || node.keys.get(i)[0] >= kind)) {
+                collect(child(node, i), kind, result);
+            }
+        }
+    }
+
+    /** Return the index of the child of internal node NODE under which KEY
+     *  belongs. */
+    private static int childIndex(Node node, byte[] key) {
+        int i = Collections.binarySearch(node.keys, key, KEY_ORDER);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    /** Return child I of NODE. */
+    private Node child(Node node, int i) {
+        Node dirty = node.dirty.get(i);
+        return dirty != null ? dirty : node(node.children.get(i));
+    }
+
+    /** Return the most keys NODE may hold. */
+    private static int max(Node node) {
+        return node.leaf ? LEAF_MAX : INTERNAL_MAX;
+    }
+
+    /** Return the node in page PAGE. */
+    private Node node(long page) {
+        Node result = _pool.get(page);
+        if (result != null) {
+            Trace.count("objects.poolHits");
+            return result;
+        }
+        Trace.count("objects.pagesRead");
+        ByteBuffer buffer = slice(page * PAGE_SIZE, PAGE_SIZE);
+        result = new Node(buffer.get() == 0);
+        result.page = page;
+        int size = buffer.getShort();
+        if (!result.leaf) {
+            result.children.add(buffer.getLong());
+            result.dirty.add(null);
+        }
+        for (int i = 0; i < size; i += 1) {
+            byte[] key = new byte[KEY_LENGTH];
+            buffer.get(key);
+            result.keys.add(key);
+            if (result.leaf) {
+                result.values.add(new long[] { buffer.getLong(), buffer.getInt() });
+            } else {
+                result.children.add(buffer.getLong());
+                result.dirty.add(null);
+            }
+        }
+        _pool.put(page, result);
+        return result;
+    }
+
+    /** Return the page image of NODE, whose children are written. */
+    private static ByteBuffer encode(Node node) {
+        ByteBuffer result = ByteBuffer.allocate(PAGE_SIZE);
+        result.put((byte) (node.leaf ? 0 : 1));
+        result.putShort((short) node.keys.size());
+        if (!node.leaf) {
+            result.putLong(node.children.get(0));
+        }
+        for (int i = 0; i < node.keys.size(); i += 1) {
+            result.put(node.keys.get(i));
+            if (node.leaf) {
+                result.putLong(node.values.get(i)[0]);
+                result.putInt((int) node.values.get(i)[1]);
+            } else {
+                result.putLong(node.children.get(i + 1));
+            }
+        }
+        return result;
+    }
+
+    /** Make the newest valid header slot current. */
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2 * SLOT_SIZE);
+        while (header.hasRemaining() && _channel.read(header, header.position()) > 0) {
+            continue;
+        }
+        long best = -1;
+        for (int slot = 0; slot < 2; slot += 1) {
+            int start = slot * SLOT_SIZE;
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), start, HEADER_LENGTH);
+            long generation = header.getLong(start + 8);
+            if (header.getLong(start) == MAGIC && generation > best
+                && header.getInt(start + HEADER_LENGTH) == (int) crc.getValue()) {
+                best = generation;
+                _generation = generation;
+                _root = header.getLong(start + 16);
+                _end = header.getLong(start + 24);
+                _count = header.getLong(start + 32);
+            }
+        }
+        if (best < 0) {
+            throw new IllegalArgumentException("not a gitlet object store: " + _file);
+        }
+    }
+
+    /** Return a header slot for generation GENERATION with the given ROOT,
+     *  END and COUNT. */
+    private static ByteBuffer header(long generation, long root, long end, long count) {
+        ByteBuffer result = ByteBuffer.allocate(HEADER_LENGTH + 4);
+        result.putLong(MAGIC).putLong(generation).putLong(root).putLong(end).putLong(count);
+        CRC32 crc = new CRC32();
+        crc.update(result.array(), 0, HEADER_LENGTH);
+        result.putInt((int) crc.getValue());
+        return result.flip();
+    }
+
+    /** Write all of BUFFER to the file at POSITION. */
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += _channel.write(buffer, position);
+        }
+    }
+
+    /** Return a buffer holding the LENGTH bytes of the file at POSITION. */
+    private ByteBuffer slice(long position, int length) {
+        try {
+            if (position + length > _mapped) {
+                remap();
+            }
+            int segment = (int) (position / SEGMENT_SIZE);
+            int offset = (int) (position % SEGMENT_SIZE);
+            if (segment < _segments.size() && offset + length <= _segments.get(segment).limit()) {
+                return _segments.get(segment).slice(offset, length);
+            }
+            // Straddles two mappings
+            ByteBuffer result = ByteBuffer.allocate(length);
+            while (result.hasRemaining()
+                   && _channel.read(result, position + result.position()) > 0) {
+                continue;
+            }
+            return result.flip();
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Map all of the file, which may have grown. */
+    private void remap() throws IOException {
+        long size = _channel.size();
+        if (!_segments.isEmpty() && _segments.get(_segments.size() - 1).limit() < SEGMENT_SIZE) {
+            _segments.remove(_segments.size() - 1);
+        }
+        for (long start = _segments.size() * SEGMENT_SIZE; start < size; start += SEGMENT_SIZE) {
+            _segments.add(_channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                       Math.min(SEGMENT_SIZE, size - start)));
+        }
+        _mapped = size;
+    }
+
+    /** Return the key of object ID of kind KIND, or null if ID is not a
+     *  full SHA-1. */
+    private static byte[] key(String kind, String id) {
+        byte kindByte = kindByte(kind);
+        if (!id.matches("[0-9a-f]{40}")) {
+            return null;
+        }
+        byte[] result = new byte[KEY_LENGTH];
+        result[0] = kindByte;
+        System.arraycopy(HexFormat.of().parseHex(id), 0, result, 1, KEY_LENGTH - 1);
+        return result;
+    }
+
+    /** Return the first byte of the keys of objects of kind KIND. */
+    private static byte kindByte(String kind) {
+        int result = KINDS.indexOf(kind);
+        if (result < 0) {
+            throw new IllegalArgumentException("unknown object kind: " + kind);
+        }
+        return (byte) result;
+    }
+
+    /** The file. */
+    private final File _file;
+
+    /** The open file. */
+    private final FileChannel _channel;
+
+    /** The current header: its generation, root page (0 if the tree is
+     *  empty), the length of the file in use and the number of objects. */
+    private long _generation, _root, _end, _count;
+
+    /** Objects written since the last flush, by key. */
+    private final TreeMap<byte[], byte[]> _pending = new TreeMap<>(KEY_ORDER);
+
+    /** Mappings of consecutive SEGMENT_SIZE pieces of the file. */
+    private final List<MappedByteBuffer> _segments = new ArrayList<>();
+
+    /** Length of the file when it was last mapped. */
+    private long _mapped;
+
+    /** The buffer pool: nodes recently read or written, by page. */
+    private final Map<Long, Node> _pool = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Node> eldest) {
+            return size() > POOL_SIZE;
+        }
+    };
+}
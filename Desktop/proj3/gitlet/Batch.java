@@ -0,0 +1,274 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/** Batch mode ("gitlet --batch"), which runs the commands read one per
+ *  line from the standard input in this one JVM.  Arguments are separated
+ *  by spaces and may be quoted with ' or ", as in a shell.  Blank lines
+ *  and lines starting with '#' are ignored.
+ *
+ *  For each command one line of JSON is printed, giving the command, its
+ *  status ("ok" or "error"), what it printed, and for an error the error
+ *  message, which ends only that command.
+ *
+ *  The metadata and stage are read once and then kept in memory:
+ *  Metadata.readFromFile and Stage.readFromFile return copies of the
+ *  latest state, and saving them only records the new state, which is
+ *  written after each command that makes commits (COMMIT_POINTS) and at
+ *  the end.  Only commands in LOCAL work this way.  Before any other
+ *  command, which may read or write the repository in other ways, the
+ *  state is written, and that command then runs as it would alone.
+ *  @author
+ */
+class Batch {
+
+    /** Commands that use the repository only through Metadata, Stage and
+     *  the object store. */
+    static final Set<String> LOCAL = Set.of(
+        "add", "rm", "commit", "status", "log", "global-log", "find", "branch",
+        "rm-branch", "checkout", "reset", "merge", "cherry-pick", "rebase", "diff",
+        "blame", "count", "fsck");
+
+    /** Commands after which the state is written. */
+    static final Set<String> COMMIT_POINTS = Set.of("commit", "merge", "cherry-pick", "rebase");
+
+    /** Run the commands on the standard input. */
+    static void run() throws IOException {
+        PrintStream console = System.out;
+        BufferedReader in =
+            new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank() || line.strip().startsWith("#")) {
+                    continue;
+                }
+                List<String> args = split(line);
+                if (args == null) {
+                    console.println(result(line, "error", "", "Unbalanced quotes."));
+                    continue;
+                }
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+                String error = null;
+                try {
+                    error = execute(args.toArray(new String[0]));
+                } finally {
+                    System.setOut(console);
+                }
+                console.println(result(args.get(0), error == null ? "ok" : "error",
+                                       output.toString(StandardCharsets.UTF_8), error));
+            }
+        } finally {
+            flush();
+        }
+    }
+
+    /** Return true iff saving the metadata and stage only records them. */
+    static boolean deferring() {
+        return _local;
+    }
+
+    /** Return true iff a command is being run by this batch, so that an
+     *  error must end only that command. */
+    static boolean running() {
+        return _running;
+    }
+
+    /** Return a copy of the latest metadata, or null if it has not been
+     *  read. */
+    static Metadata metadata() {
+        return _local && _metadata != null ? _metadata.copy() : null;
+    }
+
+    /** Return a copy of the latest stage, or null if it has not been
+     *  read. */
+    static Stage stage() {
+        return _local && _stage != null ? _stage.copy() : null;
+    }
+
+    /** Record METADATA as the latest metadata; it is to be written iff
+     *  CHANGED. */
+    static void keep(Metadata metadata, boolean changed) {
+        _metadata = metadata.copy();
+        _metadataChanged |= changed;
+    }
+
+    /** Record STAGE as the latest stage; it is to be written iff
+     *  CHANGED. */
+    static void keep(Stage stage, boolean changed) {
+        _stage = stage.copy();
+        _stageChanged |= changed;
+    }
+
+    /** Run the command ARGS, and return its error message, or null if it
+     *  succeeded. */
+    private static String execute(String[] args) throws IOException {
+        boolean local = LOCAL.contains(args[0]);
+        if (!local) {
+            flush();
+        }
+        _local = local;
+        _running = true;
+        try (Trace.Span span = Trace.span(args[0])) {
+            Main.dispatch(args);
+            if (COMMIT_POINTS.contains(args[0])) {
+                flush();
+            }
+            return null;
+        } catch (GitletException excp) {
+            return excp.getMessage() == null ? "" : excp.getMessage();
+        } catch (RuntimeException excp) {
+            return excp.toString();
+        } finally {
+            _running = false;
+            WorkingTree.finish();
+            Promisor.finish();
+            Sparse.finish();
+            Bitmaps.finish();
+            if (!local) {
+                ObjectStore.finish();
+                _metadata = null;
+                _stage = null;
+            }
+        }
+    }
+
+    /** Write the metadata and stage if they have changed. */
+    private static void flush() {
+        boolean local = _local;
+        _local = false;
+        try {
+            if (_stageChanged) {
+                _stage.saveToFile();
+            }
+            if (_metadataChanged) {
+                _metadata.saveToFile();
+            }
+            ObjectStore.flushAll();
+        } finally {
+            _stageChanged = _metadataChanged = false;
+            _local = local;
+        }
+    }
+
+    /** Return the words of LINE, separated by unquoted white space, with
+     *  quotes removed, or null if a quote is not closed. */
+    static List<String> split(String line) {
+        List<String> result = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else if (c == '\\' && quote == '"' && i + 1 < line.length()) {
+                    i += 1;
+                    word.append(line.charAt(i));
+                } else {
+                    word.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    result.add(word.toString());
+                    word = null;
+                }
+            } else {
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                if (c == '\'' || c == '"') {
+                    quote = c;
+                } else if (c == '\\' && i + 1 < line.length()) {
+                    i += 1;
+                    word.append(line.charAt(i));
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+        if (quote != 0) {
+            return null;
+        }
+        if (word != null) {
+            result.add(word.toString());
+        }
+        return result;
+    }
+
+    /** Return the JSON line reporting that COMMAND ended with STATUS,
+     *  having printed OUTPUT, with the error message ERROR unless it is
+     *  null. */
+    static String result(String command, String status, String output, String error) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"command\": ").append(quote(command))
+            .append(", \"status\": ").append(quote(status))
+            .append(", \"output\": ").append(quote(output));
+        if (error != null) {
+            json.append(", \"error\": ").append(quote(error));
+        }
+        return json.append("}").toString();
+    }
+
+    /** Return S as a JSON string. */
+    private static String quote(String s) {
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    result.append("\\\"");
+                    break;
+                case '\\':
+                    result.append("\\\\");
+                    break;
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                case '\t':
+                    result.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        result.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        result.append(c);
+                    }
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    /** True iff the running command is in LOCAL, so that the metadata and
+     *  stage are kept in memory. */
+    private static boolean _local;
+
+    /** True iff a command is running. */
+    private static boolean _running;
+
+    /** The latest metadata, or null if not read since the last command
+     *  outside LOCAL. */
+    private static Metadata _metadata;
+
+    /** The latest stage, or null if not read since the last command
+     *  outside LOCAL. */
+    private static Stage _stage;
+
+    /** True iff _metadata has changed since it was written. */
+    private static boolean _metadataChanged;
+
+    /** True iff _stage has changed since it was written. */
+    private static boolean _stageChanged;
+}
@@ -0,0 +1,68 @@
+package gitlet;
+
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Batch's parsing of command lines and its result lines.
+ *  @author
+ */
+public class BatchTest {
+
+    @Test
+    public void splitWords() {
+        assertEquals(List.of("add", "wug.txt"), Batch.split("add wug.txt"));
+        assertEquals(List.of("add", "wug.txt"), Batch.split("  add \t wug.txt  "));
+        assertEquals(List.of(), Batch.split(""));
+        assertEquals(List.of(), Batch.split("   "));
+    }
+
+    @Test
+    public void splitQuotes() {
+        assertEquals(List.of("commit", "a message"), Batch.split("commit 'a message'"));
+        assertEquals(List.of("commit", "a message"), Batch.split("commit \"a message\""));
+        assertEquals(List.of("commit", "it's"), Batch.split("commit \"it's\""));
+        assertEquals(List.of("commit", "say \"hi\""), Batch.split("commit 'say \"hi\"'"));
+        assertEquals(List.of("find", ""), Batch.split("find ''"));
+        assertEquals(List.of("ab c", "d"), Batch.split("a'b c' d"));
+        assertEquals(List.of("abc"), Batch.split("'a'\"b\"c"));
+    }
+
+    @Test
+    public void splitEscapes() {
+        assertEquals(List.of("a b"), Batch.split("a\\ b"));
+        assertEquals(List.of("say \"hi\""), Batch.split("\"say \\\"hi\\\"\""));
+        assertEquals(List.of("back\\slash"), Batch.split("\"back\\\\slash\""));
+        assertEquals(List.of("a\\b"), Batch.split("'a\\b'"));
+        assertEquals(List.of("it's"), Batch.split("'it'\"'\"'s'"));
+    }
+
+    @Test
+    public void splitUnbalanced() {
+        assertNull(Batch.split("commit 'oops"));
+        assertNull(Batch.split("commit \"oops"));
+        assertNull(Batch.split("commit \"oops\\\""));
+    }
+
+    @Test
+    public void resultOk() {
+        assertEquals("{\"command\": \"log\", \"status\": \"ok\", \"output\": \"===\\n\"}",
+                     Batch.result("log", "ok", "===\n", null));
+    }
+
+    @Test
+    public void resultError() {
+        assertEquals("{\"command\": \"merge\", \"status\": \"error\", \"output\": \"\", "
+                     + "\"error\": \"Cannot merge a branch with itself.\"}",
+                     Batch.result("merge", "error", "", "Cannot merge a branch with itself."));
+    }
+
+    @Test
+    public void resultEscapes() {
+        assertEquals("{\"command\": \"c\\\"d\", \"status\": \"ok\", "
+                     + "\"output\": \"a\\\\b\\tc\\r\\n\\u0001\u00e9\"}",
+                     Batch.result("c\"d", "ok", "a\\b\tc\r\n\u0001\u00e9", null));
+    }
+
+}
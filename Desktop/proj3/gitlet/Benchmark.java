@@ -0,0 +1,624 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/** In-process benchmarks for the gitlet commands and the helpers they spend
+ *  most of their time in.  Since Main.CWD is the working directory of the
+ *  process, this must be run from an empty scratch directory:
+ *
+ *      java gitlet.Benchmark [--files=N] [--commits=M] [--branches=B]
+ *                            [--size=BYTES] [--lines=L] [--warmup=W]
+ *                            [--iterations=I] [--time=MILLIS]
+ *                            [--btree=0|1] [--out=FILE] [NAME...]
+ *
+ *  Before each command benchmark a synthetic repository of N files of about
+ *  BYTES bytes each, M commits and B branches is generated, with its
+ *  objects in a BTreeStore if --btree=1 and loose otherwise.  Each benchmark
+ *  then runs W untimed warm-up iterations followed by I measured ones, each
+ *  lasting at least MILLIS milliseconds.  Results are written to FILE (or
+ *  the standard output) as JSON in the layout of JMH's "-rf json" so that
+ *  the same tools can be used to track regressions.  When NAMEs are given,
+ *  only those benchmarks are run.
+ *  @author
+ */
+public class Benchmark {
+
+    /** Marker file identifying a scratch directory we may wipe. */
+    private static final String MARKER = ".gitlet-bench";
+
+    /** Seed for all synthetic content, so runs are comparable. */
+    private static final long SEED = 61;
+
+    /** Parameters of the synthetic repository and of the measurement. */
+    private static final Map<String, Integer> PARAMS = new LinkedHashMap<>();
+
+    static {
+        PARAMS.put("files", 100);
+        PARAMS.put("commits", 50);
+        PARAMS.put("branches", 4);
+        PARAMS.put("size", 1024);
+        PARAMS.put("lines", 500);
+        PARAMS.put("warmup", 3);
+        PARAMS.put("iterations", 5);
+        PARAMS.put("time", 200);
+        PARAMS.put("btree", 0);
+    }
+
+    /** One benchmark.  PREPARE is run once before the first iteration,
+     *  SETUP before each invocation (untimed) and RUN is the timed body. */
+    private abstract static class Bench {
+        /** A benchmark named NAME. */
+        Bench(String name) {
+            this.name = name;
+        }
+
+        /** Called once before warm-up. */
+        void prepare() throws IOException {
+        }
+
+        /** Called before each invocation; not timed. */
+        void setup() throws IOException {
+        }
+
+        /** The measured operation. */
+        abstract void run() throws IOException;
+
+        /** Return the heap bytes retained by one copy of the data RUN
+         *  works on, or -1 if that is not measured.  Called after the
+         *  iterations. */
+        long footprint() {
+            return -1;
+        }
+
+        /** The name reported in the results. */
+        final String name;
+    }
+
+    public static void main(String... args) throws IOException {
+        String out = null;
+        List<String> selected = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--out=")) {
+                out = arg.substring("--out=".length());
+            } else if (arg.startsWith("--") && arg.contains("=")) {
+                String key = arg.substring(2, arg.indexOf('='));
+                if (!PARAMS.containsKey(key)) {
+                    usage();
+                }
+                PARAMS.put(key, Integer.parseInt(arg.substring(arg.indexOf('=') + 1)));
+            } else if (arg.startsWith("-")) {
+                usage();
+            } else {
+                selected.add(arg);
+            }
+        }
+        checkScratchDirectory();
+
+        PrintStream console = System.out;
+        List<String> results = new ArrayList<>();
+        for (Bench bench : benchmarks()) {
+            if (!selected.isEmpty() && !selected.contains(bench.name)) {
+                continue;
+            }
+            console.println("# Benchmark: " + bench.name);
+            results.add(measure(bench, console));
+        }
+
+        String json = "[\n" + String.join(",\n", results) + "\n]\n";
+        if (out == null) {
+            console.print(json);
+        } else {
+            Utils.writeContents(new File(out), json);
+        }
+    }
+
+    /** All the benchmarks, in the order they are run. */
+    private static List<Bench> benchmarks() {
+        List<Bench> result = new ArrayList<>();
+        result.add(new Bench("sha1") {
+            private byte[] _data;
+
+            @Override
+            void prepare() {
+                _data = randomBytes(new Random(SEED), param("size"));
+            }
+
+            @Override
+            void run() {
+                Utils.sha1(_data);
+            }
+        });
+        result.add(new Bench("serialize") {
+            private Commit _commit;
+
+            @Override
+            void prepare() {
+                _commit = new Commit("benchmark", null, null);
+                for (int i = 0; i < param("files"); i += 1) {
+                    _commit.fileMap.put(fileName(i), Utils.sha1(fileName(i)));
+                }
+            }
+
+            @Override
+            void run() {
+                Utils.serialize(new Manifest(_commit.fileMap));
+                Utils.serialize(_commit);
+            }
+        });
+        result.add(new Bench("fileMap.hashMap") {
+            private Map<String, String> _files;
+            private Random _random;
+
+            @Override
+            void prepare() {
+                _files = syntheticFiles();
+                _random = new Random(SEED);
+            }
+
+            @Override
+            void run() {
+                _files.get(fileName(_random.nextInt(param("files"))));
+            }
+
+            @Override
+            long footprint() {
+                return retained(Benchmark::syntheticFiles);
+            }
+        });
+        result.add(new Bench("fileMap.manifest") {
+            private Manifest _files;
+            private Random _random;
+
+            @Override
+            void prepare() {
+                _files = new Manifest(syntheticFiles());
+                _random = new Random(SEED);
+            }
+
+            @Override
+            void run() {
+                _files.get(fileName(_random.nextInt(param("files"))));
+            }
+
+            @Override
+            long footprint() {
+                return retained(() -> new Manifest(syntheticFiles()));
+            }
+        });
+        result.add(new Bench("diff") {
+            private List<String> _lines1, _lines2;
+
+            @Override
+            void prepare() {
+                Random random = new Random(SEED);
+                _lines1 = new ArrayList<>();
+                _lines2 = new ArrayList<>();
+                for (int i = 0; i < param("lines"); i += 1) {
+                    String line = "line " + random.nextInt();
+                    _lines1.add(line);
+                    if (random.nextInt(20) == 0) {
+                        _lines2.add("changed " + line);
+                    } else if (random.nextInt(20) != 0) {
+                        _lines2.add(line);
+                    }
+                }
+            }
+
+            @Override
+            void run() {
+                Diff diff = new Diff();
+                diff.setSequences(_lines1, _lines2);
+                diff.diffs();
+            }
+        });
+        result.add(new CommandBench("add") {
+            @Override
+            void setup() {
+                modifyFile(_random.nextInt(param("files")));
+            }
+
+            @Override
+            void run() throws IOException {
+                Main.add(new String[]{"add", _lastModified});
+            }
+        });
+        result.add(new CommandBench("commit") {
+            @Override
+            void setup() throws IOException {
+                modifyFile(_random.nextInt(param("files")));
+                Main.add(new String[]{"add", _lastModified});
+            }
+
+            @Override
+            void run() {
+                Main.commit(new String[]{"commit", "benchmark commit"});
+            }
+        });
+        result.add(new CommandBench("status") {
+            @Override
+            void run() {
+                Main.status(new String[]{"status"});
+            }
+        });
+        result.add(new CommandBench("log") {
+            @Override
+            void run() {
+                Main.log(new String[]{"log"});
+            }
+        });
+        result.add(new CommandBench("checkout") {
+            @Override
+            void run() throws IOException {
+                String target =
+                    Metadata.readFromFile().currentBranch.equals("master")
+                    ? "b0" : "master";
+                Main.checkout(new String[]{"checkout", target});
+            }
+        });
+        result.add(new CommandBench("reset") {
+            private String _head, _parent;
+
+            @Override
+            void prepare() throws IOException {
+                super.prepare();
+                _head = Metadata.readFromFile().head;
+                _parent = Commit.readFromFile(_head).parent1;
+            }
+
+            @Override
+            void run() throws IOException {
+                String target =
+                    Metadata.readFromFile().head.equals(_head) ? _parent : _head;
+                Main.reset(new String[]{"reset", target});
+            }
+        });
+        result.add(new CommandBench("merge") {
+            private int _count;
+            private String _branch;
+
+            @Override
+            void setup() throws IOException {
+                _count += 1;
+                _branch = "merge" + _count;
+                Main.branch(new String[]{"branch", _branch});
+                Main.checkout(new String[]{"checkout", _branch});
+                commitChange(0);
+                Main.checkout(new String[]{"checkout", "master"});
+                commitChange(1);
+            }
+
+            @Override
+            void run() throws IOException {
+                Main.merge(new String[]{"merge", _branch});
+            }
+
+            /** Commit a change to file number K. */
+            private void commitChange(int k) throws IOException {
+                modifyFile(k);
+                Main.add(new String[]{"add", _lastModified});
+                Main.commit(new String[]{"commit", "change " + _branch});
+            }
+        });
+        result.add(new CommandBench("findSplitPoint") {
+            private String _head, _branchHead;
+
+            @Override
+            void prepare() throws IOException {
+                super.prepare();
+                Metadata metadata = Metadata.readFromFile();
+                _head = metadata.head;
+                _branchHead = metadata.branchMap.get("b0");
+            }
+
+            @Override
+            void run() {
+                Main.findSplitPoint(_head, _branchHead);
+            }
+        });
+        return result;
+    }
+
+    /** A benchmark of a command against a freshly generated repository. */
+    private abstract static class CommandBench extends Bench {
+        /** A command benchmark named NAME. */
+        CommandBench(String name) {
+            super(name);
+        }
+
+        @Override
+        void prepare() throws IOException {
+            _random = new Random(SEED);
+            generateRepository(_random);
+        }
+
+        /** Overwrite file number K of the working directory with new
+         *  contents, and remember its name in _lastModified. */
+        void modifyFile(int k) {
+            _lastModified = fileName(k);
+            Utils.writeContents(Utils.join(Main.CWD, _lastModified),
+                                randomText(_random, param("size")));
+        }
+
+        /** Source of modifications. */
+        Random _random;
+
+        /** The last file changed by modifyFile. */
+        String _lastModified;
+    }
+
+    /** Run BENCH, reporting progress on CONSOLE, and return its result as
+     *  a JSON object. */
+    private static String measure(Bench bench, PrintStream console)
+        throws IOException {
+        PrintStream devNull = new PrintStream(OutputStream.nullOutputStream());
+        List<Double> scores = new ArrayList<>();
+        bench.prepare();
+        int total = param("warmup") + param("iterations");
+        for (int i = 0; i < total; i += 1) {
+            long elapsed = 0;
+            long ops = 0;
+            while (ops == 0 || elapsed < param("time") * 1_000_000L) {
+                System.setOut(devNull);
+                try {
+                    bench.setup();
+                    long start = System.nanoTime();
+                    bench.run();
+                    elapsed += System.nanoTime() - start;
+                } finally {
+                    System.setOut(console);
+                }
+                ops += 1;
+            }
+            double score = elapsed / 1000.0 / ops;
+            boolean warmup = i < param("warmup");
+            console.printf(Locale.ROOT, "%s %d: %.3f us/op%n",
+                           warmup ? "# Warmup Iteration" : "Iteration",
+                           warmup ? i + 1 : i - param("warmup") + 1, score);
+            if (!warmup) {
+                scores.add(score);
+            }
+        }
+        long footprint = bench.footprint();
+        if (footprint >= 0) {
+            console.printf(Locale.ROOT, "Footprint: %d bytes%n", footprint);
+        }
+        return toJson(bench.name, scores, footprint);
+    }
+
+    /** Number of copies kept alive when measuring a footprint. */
+    private static final int FOOTPRINT_COPIES = 10;
+
+    /** Return the heap bytes retained by each object MAKE returns,
+     *  averaged over FOOTPRINT_COPIES of them. */
+    private static long retained(Supplier<Object> make) {
+        Object[] copies = new Object[FOOTPRINT_COPIES];
+        long before = usedHeap();
+        for (int i = 0; i < copies.length; i += 1) {
+            copies[i] = make.get();
+        }
+        long after = usedHeap();
+        Reference.reachabilityFence(copies);
+        return (after - before) / copies.length;
+    }
+
+    /** Return the heap in use after collecting garbage. */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i += 1) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** Return a new map from param("files") file names to blob IDs, made
+     *  of new Strings as a deserialized fileMap is. */
+    private static Map<String, String> syntheticFiles() {
+        Map<String, String> result = new HashMap<>();
+        for (int i = 0; i < param("files"); i += 1) {
+            result.put(fileName(i), Utils.sha1(fileName(i)));
+        }
+        return result;
+    }
+
+    /** Return the JMH-style JSON record for benchmark NAME with the
+     *  per-iteration SCORES and, if not negative, the heap FOOTPRINT. */
+    private static String toJson(String name, List<Double> scores, long footprint) {
+        double mean = 0;
+        for (double s : scores) {
+            mean += s;
+        }
+        mean /= scores.size();
+        double variance = 0;
+        for (double s : scores) {
+            variance += (s - mean) * (s - mean);
+        }
+        double error = scores.size() < 2 ? Double.NaN
+            : 3.291 * Math.sqrt(variance / (scores.size() - 1) / scores.size());
+
+        StringBuilder params = new StringBuilder();
+        for (String key : List.of("files", "commits", "branches", "size", "lines", "btree")) {
+            if (params.length() > 0) {
+                params.append(", ");
+            }
+            params.append(String.format("\"%s\" : \"%d\"", key, param(key)));
+        }
+        StringBuilder raw = new StringBuilder();
+        for (double s : scores) {
+            if (raw.length() > 0) {
+                raw.append(", ");
+            }
+            raw.append(String.format(Locale.ROOT, "%.3f", s));
+        }
+        return String.format(Locale.ROOT,
+            "  {\n"
+            + "    \"benchmark\" : \"gitlet.Benchmark.%s\",\n"
+            + "    \"mode\" : \"avgt\",\n"
+            + "    \"threads\" : 1,\n"
+            + "    \"forks\" : 0,\n"
+            + "    \"warmupIterations\" : %d,\n"
+            + "    \"measurementIterations\" : %d,\n"
+            + "    \"params\" : { %s },\n"
+            + "    \"primaryMetric\" : {\n"
+            + "      \"score\" : %.3f,\n"
+            + "      \"scoreError\" : %s,\n"
+            + "      \"scoreUnit\" : \"us/op\",\n"
+            + "      \"rawData\" : [ [ %s ] ]\n"
+            + "    }%s\n"
+            + "  }",
+            name, param("warmup"), param("iterations"), params, mean,
+            Double.isNaN(error) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", error),
+            raw, footprint < 0 ? "" : String.format(Locale.ROOT,
+                ",\n    \"secondaryMetrics\" : {\n"
+                + "      \"\u00b7heap\" : {\n"
+                + "        \"score\" : %d,\n"
+                + "        \"scoreError\" : \"NaN\",\n"
+                + "        \"scoreUnit\" : \"B\",\n"
+                + "        \"rawData\" : [ [ %d ] ]\n"
+                + "      }\n"
+                + "    }", footprint, footprint));
+    }
+
+    /** Replace the contents of the scratch directory with a synthetic
+     *  repository: param("files") files, param("commits") commits on
+     *  master, and param("branches") branches forking off at evenly spaced
+     *  points of master's history, each with two commits of its own.
+     *  Content is drawn from RANDOM. */
+    private static void generateRepository(Random random) throws IOException {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            wipeScratchDirectory();
+            Main.init(param("btree") != 0 ? new String[]{"init", "--btree"}
+                      : new String[]{"init"});
+
+            int files = param("files");
+            int commits = Math.max(2, param("commits"));
+            int branches = Math.max(1, param("branches"));
+            for (int i = 0; i < files; i += 1) {
+                writeRandomFile(random, i);
+                Main.add(new String[]{"add", fileName(i)});
+            }
+            Main.commit(new String[]{"commit", "synthetic commit 0"});
+
+            int spacing = Math.max(1, commits / (branches + 1));
+            int created = 0;
+            for (int c = 1; c < commits; c += 1) {
+                if (c % spacing == 0 && created < branches) {
+                    Main.branch(new String[]{"branch", "b" + created});
+                    created += 1;
+                }
+                int changes = Math.max(1, files / 20);
+                for (int k = 0; k < changes; k += 1) {
+                    int i = random.nextInt(files);
+                    writeRandomFile(random, i);
+                    Main.add(new String[]{"add", fileName(i)});
+                }
+                Main.commit(new String[]{"commit", "synthetic commit " + c});
+            }
+            while (created < branches) {
+                Main.branch(new String[]{"branch", "b" + created});
+                created += 1;
+            }
+
+            for (int b = 0; b < branches; b += 1) {
+                Main.checkout(new String[]{"checkout", "b" + b});
+                for (int c = 0; c < 2; c += 1) {
+                    int i = random.nextInt(files);
+                    writeRandomFile(random, i);
+                    Main.add(new String[]{"add", fileName(i)});
+                    Main.commit(new String[]{"commit", "branch b" + b + " commit " + c});
+                }
+                Main.checkout(new String[]{"checkout", "master"});
+            }
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    /** Write new random contents to file number K of the working
+     *  directory, drawing from RANDOM. */
+    private static void writeRandomFile(Random random, int k) {
+        Utils.writeContents(Utils.join(Main.CWD, fileName(k)),
+                            randomText(random, param("size")));
+    }
+
+    /** Return the name of synthetic file number K. */
+    private static String fileName(int k) {
+        return String.format("f%05d.txt", k);
+    }
+
+    /** Return about SIZE bytes of random lines of text from RANDOM. */
+    private static String randomText(Random random, int size) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < size) {
+            text.append("line ").append(random.nextLong()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Return SIZE random bytes from RANDOM. */
+    private static byte[] randomBytes(Random random, int size) {
+        byte[] result = new byte[size];
+        random.nextBytes(result);
+        return result;
+    }
+
+    /** Exit unless the working directory is empty or was previously set up
+     *  by us, and mark it as ours. */
+    private static void checkScratchDirectory() {
+        String[] entries = Main.CWD.list();
+        File marker = Utils.join(Main.CWD, MARKER);
+        if (entries != null && entries.length > 0 && !marker.exists()) {
+            System.err.println("Benchmark must be run in an empty scratch directory.");
+            System.exit(1);
+        }
+        Utils.writeContents(marker, "");
+    }
+
+    /** Delete everything in the scratch directory except the marker. */
+    private static void wipeScratchDirectory() {
+        ObjectStore.finish();
+        for (File file : Main.CWD.listFiles()) {
+            if (!file.getName().equals(MARKER)) {
+                deleteRecursively(file);
+            }
+        }
+    }
+
+    /** Delete FILE and, if it is a directory, its contents. */
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** Return the value of parameter KEY. */
+    private static int param(String key) {
+        return PARAMS.get(key);
+    }
+
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java gitlet.Benchmark [--files=N] [--commits=M] "
+                           + "[--branches=B] [--size=BYTES] [--lines=L] [--warmup=W] "
+                           + "[--iterations=I] [--time=MILLIS] [--btree=0|1] [--out=FILE] "
+                           + "[NAME...]");
+        System.exit(1);
+    }
+}
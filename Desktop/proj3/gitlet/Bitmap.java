@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/** An immutable set of small non-negative integers, compressed in the
+ *  manner of EWAH (Lemire et al.): the 64-bit words of the plain bitmap
+ *  are grouped into runs of words that are all zeros or all ones, stored
+ *  only by their lengths, and literal words, stored as they are.  The
+ *  encoding is a sequence of marker words, each followed by the literal
+ *  words it counts; a marker holds the value of its run's bits in bit 63,
+ *  the run's length in bits 32 to 62 and the number of literals in bits 0
+ *  to 31.  Reachability bitmaps, in which most ancestors are set, compress
+ *  to a few words.
+ *  @author
+ */
+class Bitmap implements Serializable {
+
+    /** Longest run or literal sequence one marker can describe. */
+    private static final int MAX_COUNT = Integer.MAX_VALUE;
+
+    /** A bitmap of the bits set in BITS. */
+    Bitmap(BitSet bits) {
+        long[] raw = bits.toLongArray();
+        List<Long> words = new ArrayList<>();
+        int i = 0;
+        while (i < raw.length) {
+            boolean runBit = raw[i] == -1L;
+            long runLength = 0;
+            if (isClean(raw[i])) {
+                long clean = raw[i];
+                while (i < raw.length && raw[i] == clean && runLength < MAX_COUNT) {
+                    runLength += 1;
+                    i += 1;
+                }
+            }
+            int start = i;
+            while (i < raw.length && !isClean(raw[i]) && i - start < MAX_COUNT) {
+                i += 1;
+            }
+            words.add((runBit ? 1L << 63 : 0) | (runLength << 32) | (i - start));
+            for (int k = start; k < i; k += 1) {
+                words.add(raw[k]);
+            }
+        }
+        _words = new long[words.size()];
+        for (int k = 0; k < _words.length; k += 1) {
+            _words[k] = words.get(k);
+        }
+    }
+
+    /** Return true iff bit POSITION is set. */
+    boolean get(int position) {
+        long word = position >>> 6;
+        long start = 0;
+        int i = 0;
+        while (i < _words.length) {
+            long marker = _words[i];
+            long runLength = (marker >>> 32) & MAX_COUNT;
+            int literals = (int) (marker & 0xffffffffL);
+            if (word < start + runLength) {
+                return marker < 0;
+            }
+            start += runLength;
+            if (word < start + literals) {
+                return (_words[i + 1 + (int) (word - start)] & (1L << position)) != 0;
+            }
+            start += literals;
+            i += 1 + literals;
+        }
+        return false;
+    }
+
+    /** Return the number of bits set. */
+    int cardinality() {
+        int result = 0;
+        int i = 0;
+        while (i < _words.length) {
+            long marker = _words[i];
+            if (marker < 0) {
+                result += 64 * (int) ((marker >>> 32) & MAX_COUNT);
+            }
+            int literals = (int) (marker & 0xffffffffL);
+            for (int k = 1; k <= literals; k += 1) {
+                result += Long.bitCount(_words[i + k]);
+            }
+            i += 1 + literals;
+        }
+        return result;
+    }
+
+    /** Set in BITS every bit set here. */
+    void orInto(BitSet bits) {
+        int position = 0;
+        int i = 0;
+        while (i < _words.length) {
+            long marker = _words[i];
+            int runBits = 64 * (int) ((marker >>> 32) & MAX_COUNT);
+            if (marker < 0) {
+                bits.set(position, position + runBits);
+            }
+            position += runBits;
+            int literals = (int) (marker & 0xffffffffL);
+            for (int k = 1; k <= literals; k += 1) {
+                long literal = _words[i + k];
+                while (literal != 0) {
+                    bits.set(position + Long.numberOfTrailingZeros(literal));
+                    literal &= literal - 1;
+                }
+                position += 64;
+            }
+            i += 1 + literals;
+        }
+    }
+
+    /** Return the number of words in the compressed form. */
+    int size() {
+        return _words.length;
+    }
+
+    /** Return true iff WORD is all zeros or all ones. */
+    private static boolean isClean(long word) {
+        return word == 0 || word == -1L;
+    }
+
+    /** The compressed words. */
+    private final long[] _words;
+}
@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Bitmap.
+ *  @author
+ */
+public class BitmapTest {
+
+    /** Assert that BITMAP holds exactly the bits of EXPECTED. */
+    private static void assertSame(BitSet expected, Bitmap bitmap) {
+        int limit = expected.length() + 130;
+        for (int i = 0; i < limit; i += 1) {
+            assertEquals("bit " + i, expected.get(i), bitmap.get(i));
+        }
+        assertEquals(expected.cardinality(), bitmap.cardinality());
+        BitSet copy = new BitSet();
+        bitmap.orInto(copy);
+        assertEquals(expected, copy);
+    }
+
+    /** Return the bits from START to END, exclusive. */
+    private static BitSet range(int start, int end) {
+        BitSet result = new BitSet();
+        result.set(start, end);
+        return result;
+    }
+
+    @Test
+    public void emptySet() {
+        Bitmap bitmap = new Bitmap(new BitSet());
+        assertEquals(0, bitmap.size());
+        assertEquals(0, bitmap.cardinality());
+        assertFalse(bitmap.get(0));
+        assertFalse(bitmap.get(64));
+        BitSet bits = range(3, 5);
+        bitmap.orInto(bits);
+        assertEquals(range(3, 5), bits);
+    }
+
+    @Test
+    public void runOfOnes() {
+        BitSet bits = range(0, 64 * 5);
+        Bitmap bitmap = new Bitmap(bits);
+        assertEquals(1, bitmap.size());
+        assertSame(bits, bitmap);
+    }
+
+    @Test
+    public void runOfZerosThenLiteral() {
+        BitSet bits = new BitSet();
+        bits.set(64 * 15 + 7);
+        Bitmap bitmap = new Bitmap(bits);
+        assertEquals(2, bitmap.size());
+        assertSame(bits, bitmap);
+    }
+
+    @Test
+    public void literalsOnly() {
+        BitSet bits = new BitSet();
+        for (int i = 0; i < 64 * 4; i += 3) {
+            bits.set(i);
+        }
+        Bitmap bitmap = new Bitmap(bits);
+        assertEquals(5, bitmap.size());
+        assertSame(bits, bitmap);
+    }
+
+    @Test
+    public void mixedRunsAndLiterals() {
+        BitSet bits = range(0, 64 * 3);
+        bits.set(64 * 3 + 5);
+        bits.set(64 * 10, 64 * 20);
+        bits.set(64 * 20 + 63);
+        bits.set(64 * 40, 64 * 41 - 1);
+        Bitmap bitmap = new Bitmap(bits);
+        assertTrue(bitmap.size() < 10);
+        assertSame(bits, bitmap);
+    }
+
+    @Test
+    public void sizesAroundWordBoundaries() {
+        for (int n : new int[] { 1, 63, 64, 65, 100, 127, 128, 129, 640, 641 }) {
+            assertSame(range(0, n), new Bitmap(range(0, n)));
+            assertSame(range(1, n + 1), new Bitmap(range(1, n + 1)));
+        }
+    }
+
+    @Test
+    public void randomSets() {
+        Random random = new Random(61);
+        for (int trial = 0; trial < 200; trial += 1) {
+            int n = random.nextInt(64 * 12);
+            BitSet bits = new BitSet();
+            int i = 0;
+            while (i < n) {
+                int length = 1 + random.nextInt(3 * 64);
+                if (random.nextInt(3) == 0) {
+                    bits.set(i, Math.min(n, i + length));
+                } else if (random.nextBoolean()) {
+                    for (int k = i; k < Math.min(n, i + length); k += 1) {
+                        bits.set(k, random.nextBoolean());
+                    }
+                }
+                i += length;
+            }
+            assertSame(bits, new Bitmap(bits));
+        }
+    }
+
+    @Test
+    public void orIntoKeepsExistingBits() {
+        BitSet bits = range(100, 300);
+        Bitmap bitmap = new Bitmap(bits);
+        BitSet target = new BitSet();
+        target.set(5);
+        target.set(1000);
+        bitmap.orInto(target);
+        BitSet expected = range(100, 300);
+        expected.set(5);
+        expected.set(1000);
+        assertEquals(expected, target);
+    }
+
+    @Test
+    public void serializedRoundTrip() {
+        BitSet bits = range(0, 200);
+        bits.set(500);
+        Bitmap copy = Utils.deserialize(Utils.serialize(new Bitmap(bits)), Bitmap.class);
+        assertSame(bits, copy);
+    }
+
+}
@@ -0,0 +1,258 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Main.GITLET_BITMAPS;
+
+/** Reachability bitmaps.  Maintenance numbers every commit reachable from
+ *  a branch, and every blob, in an order that never changes once given
+ *  (parents before children, each commit followed by the blobs it
+ *  introduces), and records for the branch tips and every INTERVALth
+ *  commit a Bitmap of the objects reachable from it.  Since history does
+ *  not change, a bitmap stays correct forever.
+ *
+ *  Reachability from any commit is then found by walking back only until
+ *  commits with bitmaps, which are or-ed together; commits made since the
+ *  last maintenance are walked as usual.  Without maintenance every query
+ *  is a plain walk.
+ *  @author
+ */
+public class Bitmaps implements Dumpable {
+
+    /** Record a bitmap for one commit in this many. */
+    static final int INTERVAL = 100;
+
+    /** Object ids, in order of their positions in bitmaps. */
+    public List<String> objects;
+
+    /** Positions of the commits among objects. */
+    public Bitmap commitMask;
+
+    /** Bitmaps of the objects reachable from selected commits. */
+    public Map<String, Bitmap> bitmaps;
+
+    public Bitmaps() {
+        objects = new ArrayList<>();
+        commitMask = new Bitmap(new BitSet());
+        bitmaps = new HashMap<>();
+    }
+
+    /** The objects reachable from some commits: those with positions as a
+     *  bit set, and the others (new since the last maintenance) by id. */
+    static class Reach {
+        /** Positions of reachable objects. */
+        final BitSet bits = new BitSet();
+        /** Reachable commits without positions. */
+        final Set<String> commits = new HashSet<>();
+        /** Reachable blobs without positions. */
+        final Set<String> blobs = new HashSet<>();
+    }
+
+    /** Return the objects reachable from the commits TIPS. */
+    static Reach reach(Collection<String> tips) {
+        Bitmaps index = load();
+        Reach result = new Reach();
+        ArrayDeque<String> queue = new ArrayDeque<>(tips);
+        while (!queue.isEmpty()) {
+            String commitID = queue.remove();
+            Integer position = index.position(commitID);
+            if (position != null ? result.bits.get(position) : result.commits.contains(commitID)) {
+                continue;
+            }
+            Bitmap bitmap = index.bitmaps.get(commitID);
+            if (bitmap != null) {
+                Trace.count("bitmaps.used");
+                bitmap.orInto(result.bits);
+                continue;
+            }
+            Trace.count("bitmaps.walked");
+            Commit commit = Commit.readFromFile(commitID);
+            if (position != null) {
+                result.bits.set(position);
+            } else {
+                result.commits.add(commitID);
+            }
+            for (String blobID : commit.fileMap.values()) {
+                Integer blobPosition = index.position(blobID);
+                if (blobPosition != null) {
+                    result.bits.set(blobPosition);
+                } else {
+                    result.blobs.add(blobID);
+                }
+            }
+            if (commit.parent1 != null) {
+                queue.add(commit.parent1);
+            }
+            if (commit.parent2 != null) {
+                queue.add(commit.parent2);
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff commit ANCESTOR is TIP or an ancestor of it. */
+    static boolean isAncestor(String ancestor, String tip) {
+        Bitmaps index = load();
+        Integer position = index.position(ancestor);
+        Bitmap bitmap = index.bitmaps.get(tip);
+        if (position != null && bitmap != null) {
+            return bitmap.get(position);
+        }
+        Reach reach = reach(List.of(tip));
+        return position != null ? reach.bits.get(position) : reach.commits.contains(ancestor);
+    }
+
+    /** Return the number of commits reachable from commit TIP. */
+    static int countCommits(String tip) {
+        Reach reach = reach(List.of(tip));
+        BitSet commits = new BitSet();
+        load().commitMask.orInto(commits);
+        commits.and(reach.bits);
+        return commits.cardinality() + reach.commits.size();
+    }
+
+    /** Return the number of blobs reachable from commit TIP. */
+    static int countBlobs(String tip) {
+        Reach reach = reach(List.of(tip));
+        BitSet commits = new BitSet();
+        load().commitMask.orInto(commits);
+        reach.bits.andNot(commits);
+        return reach.bits.cardinality() + reach.blobs.size();
+    }
+
+    /** Number the objects reachable from TIPS that are not yet numbered,
+     *  and record bitmaps for TIPS and one in INTERVAL new commits. */
+    void update(Collection<String> tips) {
+        load();
+        _loaded = this;
+        _positions = null;
+        Map<String, Integer> positions = positions();
+
+        // Number new commits depth first, each after its parents
+        List<String> added = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        ArrayDeque<String[]> stack = new ArrayDeque<>();
+        for (String tip : tips) {
+            stack.push(new String[] { tip, null });
+        }
+        while (!stack.isEmpty()) {
+            String[] top = stack.pop();
+            String commitID = top[0];
+            if (top[1] != null) {
+                positions.put(commitID, objects.size());
+                objects.add(commitID);
+                added.add(commitID);
+                for (String blobID : Commit.readFromFile(commitID).fileMap.values()) {
+                    if (!positions.containsKey(blobID)) {
+                        positions.put(blobID, objects.size());
+                        objects.add(blobID);
+                    }
+                }
+                continue;
+            }
+            if (positions.containsKey(commitID) || !seen.add(commitID)) {
+                continue;
+            }
+            Commit commit = Commit.readFromFile(commitID);
+            stack.push(new String[] { commitID, "done" });
+            if (commit.parent2 != null) {
+                stack.push(new String[] { commit.parent2, null });
+            }
+            if (commit.parent1 != null) {
+                stack.push(new String[] { commit.parent1, null });
+            }
+        }
+        BitSet mask = new BitSet();
+        commitMask.orInto(mask);
+        for (String commitID : added) {
+            mask.set(positions.get(commitID));
+        }
+        commitMask = new Bitmap(mask);
+
+        // Oldest first, so each walk stops at the bitmaps just made
+        Set<String> selected = new HashSet<>(tips);
+        for (int i = INTERVAL - 1; i < added.size(); i += INTERVAL) {
+            selected.add(added.get(i));
+        }
+        for (String commitID : added) {
+            if (selected.contains(commitID)) {
+                bitmaps.put(commitID, new Bitmap(reach(List.of(commitID)).bits));
+            }
+        }
+        for (String tip : tips) {
+            if (!bitmaps.containsKey(tip)) {
+                bitmaps.put(tip, new Bitmap(reach(List.of(tip)).bits));
+            }
+        }
+    }
+
+    /** Return the position of object ID, or null if it has none. */
+    private Integer position(String id) {
+        return positions().get(id);
+    }
+
+    /** Return the map from objects to positions. */
+    private Map<String, Integer> positions() {
+        if (_positions == null) {
+            _positions = new HashMap<>();
+            for (int i = 0; i < objects.size(); i += 1) {
+                _positions.put(objects.get(i), i);
+            }
+        }
+        return _positions;
+    }
+
+    /** Forget the bitmaps read by this command. */
+    static void finish() {
+        _loaded = null;
+    }
+
+    /** Return the saved bitmaps, or none if there are none. */
+    private static Bitmaps load() {
+        if (_loaded == null) {
+            _loaded = readFromFile();
+        }
+        return _loaded;
+    }
+
+    public void saveToFile() {
+        Bitmaps newBitmaps = new Bitmaps();
+        newBitmaps.objects = objects;
+        newBitmaps.commitMask = commitMask;
+        newBitmaps.bitmaps = bitmaps;
+        try (Trace.Span span = Trace.span("bitmaps.write")) {
+            Utils.writeObject(GITLET_BITMAPS, newBitmaps);
+        }
+    }
+
+    /** Return the saved bitmaps, or none if maintenance never ran. */
+    public static Bitmaps readFromFile() {
+        if (!GITLET_BITMAPS.exists()) {
+            return new Bitmaps();
+        }
+        try (Trace.Span span = Trace.span("bitmaps.read")) {
+            return Utils.readObject(GITLET_BITMAPS, Bitmaps.class);
+        }
+    }
+
+    /** The bitmaps used by queries in this command. */
+    private static Bitmaps _loaded;
+
+    /** Positions of objects, built when first needed. */
+    private transient Map<String, Integer> _positions;
+
+    @Override
+    public void dump() {
+        System.out.println("Objects: " + objects.size());
+        System.out.println("Commits: " + commitMask.cardinality());
+        System.out.println("Bitmaps: " + bitmaps.size());
+    }
+}
@@ -0,0 +1,120 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Attribution of the lines of a file to the commits that introduced them.
+ *
+ *  Only the commits where the file's blob changed are diffed.  From the
+ *  starting commit, Blame walks back through parents that have the same
+ *  blob (preferring the first parent) to the commit that introduced that
+ *  version, then steps to that commit's first parent for the previous
+ *  version, and so on, until the file did not exist or a version is found
+ *  in the LineOrigins cache.  It then works forward, diffing each version
+ *  against the one before with LinearDiff: unchanged lines keep their
+ *  origins, and the rest belong to the commit that introduced the
+ *  version.  Every version computed is cached, so blaming a file again,
+ *  or after a few more commits, only diffs the new versions.
+ *  @author
+ */
+class Blame {
+
+    /** Return the IDs of the commits that introduced each line of file
+     *  FILENAME as of commit COMMITID, which must contain it. */
+    static List<String> origins(String fileName, String commitID) {
+        // Versions not in the cache, newest first, as (commit, blob) pairs
+        List<String[]> versions = new ArrayList<>();
+        LineOrigins base = null;
+        String baseBlobID = null;
+
+        // Each parent is read once when checking it and again when stepping to it
+        Map<String, Commit> commits = new HashMap<>();
+        Commit commit = Commit.readFromFile(commitID);
+        String blobID = commit.fileMap.get(fileName);
+        while (true) {
+            // Find the commit that introduced this version
+            while (true) {
+                String parentID = sameBlobParent(commit, fileName, blobID, commits);
+                if (parentID == null) {
+                    break;
+                }
+                commitID = parentID;
+                commit = read(commitID, commits);
+            }
+
+            base = LineOrigins.readFromFile(blobID, commitID);
+            if (base != null) {
+                Trace.count("blame.cacheHits");
+                baseBlobID = blobID;
+                break;
+            }
+            versions.add(new String[] { commitID, blobID });
+            if (commit.parent1 == null) {
+                break;
+            }
+            commitID = commit.parent1;
+            commit = read(commitID, commits);
+            blobID = commit.fileMap.get(fileName);
+            if (blobID == null) {
+                break;
+            }
+        }
+
+        // Work forward from the oldest version not cached
+        List<String> baseLines = baseBlobID == null || versions.isEmpty() ? new ArrayList<>()
+            : UnifiedDiff.splitLines(Blob.read(baseBlobID));
+        List<String> result = base == null ? new ArrayList<>() : base.commitIDs;
+        for (int v = versions.size() - 1; v >= 0; v -= 1) {
+            String versionCommitID = versions.get(v)[0];
+            String versionBlobID = versions.get(v)[1];
+            List<String> lines = UnifiedDiff.splitLines(Blob.read(versionBlobID));
+            result = propagate(result, LinearDiff.diffs(baseLines, lines),
+                               lines.size(), versionCommitID);
+            Trace.count("blame.versionsDiffed");
+
+            LineOrigins origins = new LineOrigins();
+            origins.commitIDs = result;
+            origins.saveToFile(versionBlobID, versionCommitID);
+            baseLines = lines;
+        }
+        return result;
+    }
+
+    /** Return the ID of a parent of COMMIT whose version of FILENAME is
+     *  BLOBID, or null if there is none.  COMMITS memoizes commits read. */
+    private static String sameBlobParent(Commit commit, String fileName, String blobID,
+                                         Map<String, Commit> commits) {
+        for (String parentID : new String[] { commit.parent1, commit.parent2 }) {
+            if (parentID != null
+                && blobID.equals(read(parentID, commits).fileMap.get(fileName))) {
+                return parentID;
+            }
+        }
+        return null;
+    }
+
+    /** Return the commit named COMMITID, memoized in COMMITS. */
+    private static Commit read(String commitID, Map<String, Commit> commits) {
+        return commits.computeIfAbsent(commitID, Commit::readFromFile);
+    }
+
+    /** Return the origins of the SIZE lines of a new version produced from
+     *  the previous version, whose lines have origins OLDORIGINS, by EDITS
+     *  (as from LinearDiff.diffs).  Inserted lines come from COMMITID. */
+    private static List<String> propagate(List<String> oldOrigins, int[] edits,
+                                          int size, String commitID) {
+        List<String> result = new ArrayList<>(size);
+        int old = 0;
+        for (int e = 0; e < edits.length; e += 4) {
+            result.addAll(oldOrigins.subList(old, edits[e]));
+            for (int i = 0; i < edits[e + 3]; i += 1) {
+                result.add(commitID);
+            }
+            old = edits[e] + edits[e + 1];
+        }
+        result.addAll(oldOrigins.subList(old, oldOrigins.size()));
+        return result;
+    }
+}
@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/** The blob store.  A blob is the contents of one version of a file, named
+ *  by the SHA-1 of those contents.  Blobs smaller than CHUNK_THRESHOLD are
+ *  stored whole, as "blobs" objects.  Larger ones are split by Chunker
+ *  into content-defined chunks, each stored once as a "chunks" object
+ *  under its own SHA-1, and a ChunkList naming them is stored as a
+ *  "chunked" object.  Slightly modified versions of a large binary
+ *  therefore share most of their chunks.
+ *  @author
+ */
+class Blob {
+
+    /** Blobs of at least this many bytes are chunked. */
+    static final int CHUNK_THRESHOLD = 1 << 20;
+
+    /** Return true iff the blob named ID is stored. */
+    static boolean exists(String id) {
+        return existsIn(ObjectStore.local(), id);
+    }
+
+    /** Return true iff the blob named ID is stored in STORE. */
+    static boolean existsIn(ObjectStore store, String id) {
+        return store.contains("blobs", id) || store.contains("chunked", id);
+    }
+
+    /** Store CONTENTS, whose SHA-1 is ID, unless already stored. */
+    static void write(String id, byte[] contents) {
+        if (exists(id)) {
+            return;
+        }
+        Trace.count("blobs.written");
+        ObjectStore store = ObjectStore.local();
+        if (contents.length < CHUNK_THRESHOLD) {
+            store.write("blobs", id, contents);
+            return;
+        }
+
+        try (Trace.Span span = Trace.span("blob.chunk")) {
+            List<Integer> sizes = Chunker.split(contents);
+            ChunkList chunkList = new ChunkList();
+            chunkList.size = contents.length;
+            chunkList.chunkSizes = new int[sizes.size()];
+            int start = 0;
+            for (int i = 0; i < sizes.size(); i += 1) {
+                byte[] chunk = Arrays.copyOfRange(contents, start, start + sizes.get(i));
+                String chunkID = Utils.sha1(chunk);
+                if (store.contains("chunks", chunkID)) {
+                    Trace.count("chunks.reused");
+                } else {
+                    Trace.count("chunks.written");
+                    store.write("chunks", chunkID, chunk);
+                }
+                chunkList.chunkIDs.add(chunkID);
+                chunkList.chunkSizes[i] = chunk.length;
+                start += chunk.length;
+            }
+            // Written last, so the blob only exists once all its chunks do
+            store.write("chunked", id, Utils.serialize(chunkList));
+        }
+    }
+
+    /** Return the contents of the blob named ID. */
+    static byte[] read(String id) {
+        Trace.count("blobs.read");
+        byte[] result = readFrom(ObjectStore.local(), id);
+        if (result == null) {
+            // Perhaps a blob left with the promisor by a blobless clone
+            result = Promisor.read(id);
+        }
+        if (result == null) {
+            throw new IllegalArgumentException("no blob " + id);
+        }
+        return result;
+    }
+
+    /** Return the contents of the blob named ID in STORE, or null if it is
+     *  not stored there. */
+    static byte[] readFrom(ObjectStore store, String id) {
+        byte[] whole = store.read("blobs", id);
+        if (whole != null) {
+            return whole;
+        }
+        byte[] list = store.read("chunked", id);
+        if (list == null) {
+            return null;
+        }
+
+        try (Trace.Span span = Trace.span("blob.assemble")) {
+            ChunkList chunkList = Utils.deserialize(list, ChunkList.class);
+            int[] offsets = new int[chunkList.chunkSizes.length];
+            for (int i = 1; i < offsets.length; i += 1) {
+                offsets[i] = offsets[i - 1] + chunkList.chunkSizes[i - 1];
+            }
+            byte[] result = new byte[(int) chunkList.size];
+            IntStream.range(0, offsets.length).parallel().forEach(i -> {
+                byte[] chunk = store.read("chunks", chunkList.chunkIDs.get(i));
+                System.arraycopy(chunk, 0, result, offsets[i], chunk.length);
+            });
+            Trace.count("chunks.read", offsets.length);
+            return result;
+        }
+    }
+
+    /** Return the contents of the blob named ID as a String. */
+    static String readAsString(String id) {
+        return new String(read(id), StandardCharsets.UTF_8);
+    }
+}
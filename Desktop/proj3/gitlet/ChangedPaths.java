@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+import static gitlet.Main.GITLET_CHANGED_PATHS;
+
+/** A Bloom filter of the names of the files a commit changed relative to
+ *  its first parent, together with that parent's ID, so that a walk along
+ *  first parents looking for changes to a file ("log -- FILE") need only
+ *  load the commits that may have changed it.  Written when the commit is
+ *  made, in GITLET_CHANGED_PATHS under the commit's ID; for older commits
+ *  it is computed and saved the first time it is needed.
+ *  @author
+ */
+public class ChangedPaths implements Dumpable {
+
+    /** Bits of filter per changed file. */
+    static final int BITS_PER_PATH = 10;
+
+    /** Number of bits set per file name. */
+    static final int NUM_HASHES = 7;
+
+    /** Commits changing more files than this get no filter. */
+    static final int MAX_PATHS = 512;
+
+    public String parent1;
+
+    /** The filter bits, or null if every name must be taken as a possible
+     *  match. */
+    public long[] bits;
+
+    public ChangedPaths() {};
+
+    /** A filter for a commit whose first parent is PARENT1 and which
+     *  changed the files named PATHS. */
+    public ChangedPaths(String parent1, Collection<String> paths) {
+        this.parent1 = parent1;
+        if (paths.size() > MAX_PATHS) {
+            return;
+        }
+        bits = new long[Math.max(1, (paths.size() * BITS_PER_PATH + 63) / 64)];
+        for (String path : paths) {
+            long hash = hash(path);
+            for (int i = 0; i < NUM_HASHES; i += 1) {
+                int bit = bitIndex(hash, i);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+        }
+    }
+
+    /** Return false if the commit certainly did not change file PATH. */
+    public boolean mightContain(String path) {
+        if (bits == null) {
+            return true;
+        }
+        long hash = hash(path);
+        for (int i = 0; i < NUM_HASHES; i += 1) {
+            int bit = bitIndex(hash, i);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void saveToFile(String commitID) {
+        GITLET_CHANGED_PATHS.mkdir();
+        ChangedPaths newPaths = new ChangedPaths();
+        newPaths.parent1 = parent1;
+        newPaths.bits = bits;
+        Utils.writeObject(Utils.join(GITLET_CHANGED_PATHS, commitID), newPaths);
+    }
+
+    /** Return the filter of commit COMMITID, computing and saving it if
+     *  it was never written. */
+    public static ChangedPaths readFromFile(String commitID) {
+        File file = Utils.join(GITLET_CHANGED_PATHS, commitID);
+        if (file.exists()) {
+            return Utils.readObject(file, ChangedPaths.class);
+        }
+        Trace.count("changedPaths.computed");
+        Commit commit = Commit.readFromFile(commitID);
+        Map<String, String> parentFiles = commit.parent1 == null ? Map.of()
+            : Commit.readFromFile(commit.parent1).fileMap;
+        ChangedPaths result = new ChangedPaths(commit.parent1,
+                                               Main.changedFileNames(parentFiles, commit.fileMap));
+        result.saveToFile(commitID);
+        return result;
+    }
+
+    /** Return a 64-bit hash of PATH (FNV-1a, then scrambled). */
+    private static long hash(String path) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        return h ^ (h >>> 33);
+    }
+
+    /** Return the index of bit I for a name with hash HASH, by double
+     *  hashing on its two halves. */
+    private int bitIndex(long hash, int i) {
+        int h1 = (int) hash, h2 = (int) (hash >>> 32);
+        return Math.floorMod(h1 + i * h2, bits.length * 64);
+    }
+
+    @Override
+    public void dump() {
+        System.out.println("Parent: " + parent1);
+        System.out.println("Bits: " + (bits == null ? "none" : bits.length * 64));
+    }
+}
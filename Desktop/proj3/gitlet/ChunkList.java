@@ -0,0 +1,30 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** The description of a large blob that is stored as a sequence of
+ *  content-addressed chunks: the chunk ids in order and their sizes.
+ *  @author
+ */
+public class ChunkList implements Dumpable {
+
+    public long size;
+
+    public List<String> chunkIDs;
+
+    public int[] chunkSizes;
+
+    public ChunkList() {
+        chunkIDs = new ArrayList<>();
+    }
+
+    @Override
+    public void dump() {
+        System.out.println("Size: " + size);
+        System.out.println("Chunks: " + chunkIDs.size());
+        for (int i = 0; i < chunkIDs.size(); i += 1) {
+            System.out.println("  " + chunkIDs.get(i) + " " + chunkSizes[i]);
+        }
+    }
+}
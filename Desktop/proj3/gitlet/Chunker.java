@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/** Content-defined chunking of byte arrays using the FastCDC algorithm
+ *  (Xia et al., "FastCDC: a Fast and Efficient Content-Defined Chunking
+ *  Approach for Data Deduplication", USENIX ATC '16).  Chunk boundaries are
+ *  chosen where a rolling "gear" hash of the preceding bytes matches a mask,
+ *  so an insertion or deletion only changes the chunks around it and the
+ *  rest of the chunks of a slightly modified file are shared with the
+ *  previous version.
+ *  @author
+ */
+class Chunker {
+
+    /** Chunks are never smaller than this (except the last). */
+    static final int MIN_SIZE = 2 * 1024;
+
+    /** Target average chunk size. */
+    static final int AVG_SIZE = 8 * 1024;
+
+    /** Chunks are never larger than this. */
+    static final int MAX_SIZE = 64 * 1024;
+
+    /** Mask used before reaching AVG_SIZE: two bits more than log2(AVG_SIZE),
+     *  making early cut points less likely ("normalized chunking").  The
+     *  bits are taken from the top of the hash, which depend on the last 64
+     *  bytes seen rather than just the last few. */
+    private static final long MASK_SMALL = 0xFFFEL << 48;
+
+    /** Mask used after AVG_SIZE: two bits fewer than log2(AVG_SIZE). */
+    private static final long MASK_LARGE = 0x7FFL << 53;
+
+    /** Random values for each byte value.  Fixed, since chunk boundaries
+     *  must not change between runs. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x67697466L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Return the lengths of the successive chunks of DATA. */
+    static List<Integer> split(byte[] data) {
+        List<Integer> result = new ArrayList<>();
+        int start = 0;
+        while (start < data.length) {
+            int length = cut(data, start, data.length);
+            result.add(length);
+            start += length;
+        }
+        return result;
+    }
+
+    /** Return the length of the chunk of DATA that starts at START, where
+     *  the data ends at END. */
+    private static int cut(byte[] data, int start, int end) {
+        int n = end - start;
+        if (n <= MIN_SIZE) {
+            return n;
+        }
+        if (n > MAX_SIZE) {
+            n = MAX_SIZE;
+        }
+        int normal = Math.min(n, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[data[start + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i;
+            }
+        }
+        for (; i < n; i += 1) {
+            hash = (hash << 1) + GEAR[data[start + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/** Population of a new repository's object store from an existing one,
+ *  for clone.  Everything under the folders in IMMUTABLE is named by its
+ *  content (or by the commit it describes) and is never rewritten once
+ *  stored, so the new repository can share those files with the old one
+ *  through hard links instead of copies.  Files are copied only when a
+ *  link cannot be made, as across file systems.  The file of a B+tree
+ *  store does change, so a clone of a repository with one gets a new one,
+ *  into which the objects are copied.
+ *  @author
+ */
+class Clone {
+
+    /** Folders of a .gitlet directory whose files are never modified. */
+    static final String[] IMMUTABLE = {
+        "blobs", "chunked", "chunks", "commits", "manifests", "changed-paths", "blame", "sketches"
+    };
+
+    /** Link or copy into the .gitlet directory TO the immutable files of
+     *  the .gitlet directory FROM, except those in folders named in SKIP,
+     *  which are left empty. */
+    static void linkObjects(File from, File to, String... skip) {
+        ObjectStore store = ObjectStore.open(from);
+        boolean loose = store instanceof LooseStore;
+        if (!loose) {
+            BTreeStore.create(to);
+            copyObjects(store, ObjectStore.open(to), skip);
+        }
+        for (String folder : IMMUTABLE) {
+            if (!loose && ObjectStore.KINDS.contains(folder)) {
+                continue;
+            }
+            File source = Utils.join(from, folder);
+            File target = Utils.join(to, folder);
+            target.mkdir();
+            if (Arrays.asList(skip).contains(folder)) {
+                continue;
+            }
+            String[] names = source.list();
+            if (names == null) {
+                continue;
+            }
+            try (Trace.Span span = Trace.span("clone." + folder)) {
+                Arrays.stream(names).parallel().forEach(name ->
+                    linkOrCopy(Utils.join(source, name).toPath(), Utils.join(target, name).toPath()));
+            }
+        }
+    }
+
+    /** Copy the objects of SOURCE into TARGET, except those of the kinds
+     *  in SKIP. */
+    private static void copyObjects(ObjectStore source, ObjectStore target, String... skip) {
+        for (String kind : ObjectStore.KINDS) {
+            if (Arrays.asList(skip).contains(kind)) {
+                continue;
+            }
+            try (Trace.Span span = Trace.span("clone." + kind)) {
+                for (String id : source.list(kind)) {
+                    target.write(kind, id, source.read(kind, id));
+                    Trace.count("clone.copied");
+                }
+                target.flush();
+            }
+        }
+    }
+
+    /** Make TARGET a hard link to SOURCE or, failing that, a copy of it. */
+    private static void linkOrCopy(Path source, Path target) {
+        try {
+            if (!_linksFail) {
+                try {
+                    Files.createLink(target, source);
+                    Trace.count("clone.linked");
+                    return;
+                } catch (FileSystemException | UnsupportedOperationException excp) {
+                    // Probably another file system; stop trying
+                    _linksFail = true;
+                }
+            }
+            Files.copy(source, target);
+            Trace.count("clone.copied");
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Set once a link has failed. */
+    private static volatile boolean _linksFail;
+}
@@ -1,14 +1,19 @@
 package gitlet;
 
-import java.io.File;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.AbstractMap;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
-import static gitlet.Main.GITLET_COMMITS;
-
+/** A commit.  Only its header is stored as the commit object; its files
+ *  are stored as the Manifest named by manifest, which a commit read back
+ *  loads only when fileMap is first used.
+ *  @author
+ */
 public class Commit implements Dumpable {
 
     public String message;
@@ -19,7 +24,10 @@ public class Commit implements Dumpable {
 
     public String parent2;
 
-    public Map<String, String> fileMap;
+    /** The ID of the Manifest of fileMap, set when this is saved. */
+    public String manifest;
+
+    public transient Map<String, String> fileMap;
 
     public Commit() {};
 
@@ -57,27 +65,164 @@ public class Commit implements Dumpable {
         return formatter.format(timeStamp);
     }
 
-    public void saveToFile(String fileName) {
-        File commitFile = Utils.join(GITLET_COMMITS, fileName);
+    /** Save this commit, writing its manifest unless it is the unchanged
+     *  one it was read with, and return its ID. */
+    public String saveToFile() {
+        if (fileMap instanceof LazyFileMap lazy && !lazy.isChanged()) {
+            manifest = lazy._manifest;
+        } else {
+            manifest = Manifest.save(fileMap);
+        }
         Commit newCommit = new Commit();
         newCommit.message = message;
         newCommit.parent1 = parent1;
         newCommit.parent2 = parent2;
         newCommit.timeStamp = timeStamp;
-        newCommit.fileMap = fileMap;
-        Utils.writeObject(commitFile, newCommit);
+        newCommit.manifest = manifest;
+        try (Trace.Span span = Trace.span("commit.write")) {
+            Trace.count("commits.written");
+            byte[] contents = Utils.serialize(newCommit);
+            String id = Utils.sha1(contents);
+            ObjectStore.local().write("commits", id, contents);
+            return id;
+        }
     }
 
     public static Commit readFromFile(String fileName) {
-        File commitFile = Utils.join(GITLET_COMMITS, fileName);
-        return Utils.readObject(commitFile, Commit.class);
+        return readFrom(ObjectStore.local(), fileName);
+    }
+
+    /** Return commit ID of STORE, whose files are read from STORE when
+     *  first used. */
+    public static Commit readFrom(ObjectStore store, String id) {
+        try (Trace.Span span = Trace.span("commit.read")) {
+            Trace.count("commits.read");
+            byte[] contents = store.read("commits", id);
+            if (contents == null) {
+                throw new IllegalArgumentException("no commit " + id);
+            }
+            Commit commit = Utils.deserialize(contents, Commit.class);
+            commit.fileMap = new LazyFileMap(store, commit.manifest);
+            return commit;
+        }
+    }
+
+    /** Return FILES as a Manifest if it is one, or is the unchanged file
+     *  map of a commit read back, and otherwise null. */
+    static Manifest asManifest(Map<String, String> files) {
+        if (files instanceof LazyFileMap lazy && !lazy.isChanged()) {
+            return (Manifest) lazy.files();
+        }
+        return files instanceof Manifest manifest ? manifest : null;
+    }
+
+    /** The files of a commit read back: its manifest, read on first use
+     *  and copied to a HashMap on the first change. */
+    private static class LazyFileMap extends AbstractMap<String, String> {
+
+        /** The files of manifest MANIFEST in STORE. */
+        LazyFileMap(ObjectStore store, String manifest) {
+            _store = store;
+            _manifest = manifest;
+        }
+
+        /** Return true iff the files have been changed. */
+        boolean isChanged() {
+            return _changed;
+        }
+
+        /** Return the files, reading them if need be. */
+        private Map<String, String> files() {
+            if (_files == null) {
+                _files = Manifest.read(_store, _manifest);
+            }
+            return _files;
+        }
+
+        /** Return the files, as a map that may be changed. */
+        private Map<String, String> mutable() {
+            if (!_changed) {
+                _files = new HashMap<>(files());
+                _changed = true;
+            }
+            return _files;
+        }
+
+        @Override
+        public int size() {
+            return files().size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return files().isEmpty();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return files().containsKey(key);
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return files().containsValue(value);
+        }
+
+        @Override
+        public String get(Object key) {
+            return files().get(key);
+        }
+
+        @Override
+        public String put(String key, String value) {
+            return mutable().put(key, value);
+        }
+
+        @Override
+        public String remove(Object key) {
+            return mutable().remove(key);
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends String> m) {
+            mutable().putAll(m);
+        }
+
+        @Override
+        public void clear() {
+            mutable().clear();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return files().keySet();
+        }
+
+        @Override
+        public Collection<String> values() {
+            return files().values();
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return files().entrySet();
+        }
+
+        /** The store holding the manifest. */
+        private final ObjectStore _store;
+        /** The ID of the manifest. */
+        private final String _manifest;
+        /** The files, once read. */
+        private Map<String, String> _files;
+        /** True iff _files is a changed copy of the manifest. */
+        private boolean _changed;
     }
 
     @Override
     public void dump() {
         System.out.println("Date: " + getTimeStampAsString());
         System.out.println("Message: " + message);
-        System.out.println("FileMap: " + fileMap.toString());
+        System.out.println("Manifest: " + manifest);
     }
 
     public void printLog() {
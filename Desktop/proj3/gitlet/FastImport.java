@@ -0,0 +1,333 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/** The "fast-import" command, which adds to the repository the history
+ *  described by a stream, in the manner of git fast-import.  Blobs and
+ *  commits go straight to the object store and the working tree is never
+ *  touched, so a long history costs one JVM, and each commit costs only
+ *  the files it changes plus writing its manifest.  The files of the last
+ *  commit on each branch are kept in memory for the next one.  Objects are
+ *  made durable, and the branches updated, only at "checkpoint" and at the
+ *  end of the stream; if the stream is malformed, the branches are left as
+ *  they were at the last checkpoint.
+ *
+ *  The stream is a sequence of commands, each starting on a line of its
+ *  own, where DATA is a line "data N" followed by exactly N bytes and
+ *  optionally a newline:
+ *
+ *      blob                Store a blob with contents DATA, giving it
+ *      [mark :M]           mark :M, if present.
+ *      DATA
+ *
+ *      commit BRANCH       Make a commit on BRANCH with message DATA,
+ *      [mark :M]           made at time SECONDS after the epoch (or now),
+ *      [time SECONDS]      whose first parent is REF (by default, the tip
+ *      DATA                of BRANCH) and whose second parent is MERGE,
+ *      [from REF]          if given.  Its files are those of the first
+ *      [merge MERGE]       parent, changed by the file commands: "M BLOB
+ *      FILE-COMMAND...     NAME" sets file NAME to blob BLOB (a mark, a
+ *                          blob ID, or "inline" followed by DATA), "D
+ *                          NAME" removes it and "deleteall" removes all.
+ *
+ *      reset BRANCH        Make REF the tip of BRANCH.
+ *      [from REF]
+ *
+ *      checkpoint          Make everything so far durable.
+ *      done                End the stream.
+ *
+ *  A REF is a mark, a branch or a commit ID.  Blank lines and lines
+ *  starting with '#' between commands are ignored.
+ *  @author
+ */
+class FastImport {
+
+    /** An import reading the stream IN. */
+    FastImport(InputStream in) {
+        _in = new BufferedInputStream(in, 1 << 16);
+        _metadata = Metadata.readFromFile();
+        _branches = new HashMap<>(_metadata.branchMap);
+    }
+
+    /** Read and apply the whole stream. */
+    void run() throws IOException {
+        String line;
+        while ((line = nextCommand()) != null) {
+            String[] words = line.split(" ", 2);
+            switch (words[0]) {
+                case "blob":
+                    blob();
+                    break;
+                case "commit":
+                    commit(argument(words));
+                    break;
+                case "reset":
+                    reset(argument(words));
+                    break;
+                case "checkpoint":
+                    checkpoint();
+                    break;
+                case "done":
+                    checkpoint();
+                    return;
+                default:
+                    error("unknown command " + words[0]);
+            }
+        }
+        checkpoint();
+    }
+
+    /** Read the rest of a "blob" command. */
+    private void blob() throws IOException {
+        String mark = mark();
+        byte[] contents = data(readLine());
+        String id = writeBlob(contents);
+        if (mark != null) {
+            _marks.put(mark, id);
+        }
+    }
+
+    /** Read the rest of a "commit" command on BRANCH. */
+    private void commit(String branch) throws IOException {
+        String mark = mark();
+        String line = readLine();
+        ZonedDateTime timeStamp = ZonedDateTime.now(ZoneId.systemDefault());
+        if (line != null && line.startsWith("time ")) {
+            try {
+                timeStamp = ZonedDateTime.ofInstant(
+                    Instant.ofEpochSecond(Long.parseLong(line.substring(5))),
+                    ZoneId.systemDefault());
+            } catch (NumberFormatException excp) {
+                error("bad time " + line.substring(5));
+            }
+            line = readLine();
+        }
+        String message = new String(data(line), StandardCharsets.UTF_8);
+
+        String parent1 = _branches.get(branch);
+        String parent2 = null;
+        line = readLine();
+        if (line != null && line.startsWith("from ")) {
+            parent1 = commitRef(line.substring(5));
+            line = readLine();
+        }
+        if (line != null && line.startsWith("merge ")) {
+            parent2 = commitRef(line.substring(6));
+            line = readLine();
+        }
+        if (parent1 == null) {
+            error("branch " + branch + " has no commits; give 'from'");
+        }
+
+        Map<String, String> files = _files.remove(parent1);
+        _files.remove(_branches.get(branch));
+        if (files == null) {
+            files = new HashMap<>(Commit.readFromFile(parent1).fileMap);
+        }
+        for (; line != null && !line.isEmpty(); line = readLine()) {
+            if (line.equals("deleteall")) {
+                files.clear();
+            } else if (line.startsWith("D ")) {
+                files.remove(fileName(line.substring(2)));
+            } else if (line.startsWith("M ")) {
+                String[] words = line.split(" ", 3);
+                if (words.length != 3) {
+                    error("bad file command " + line);
+                }
+                String blobID = words[1].equals("inline")
+                    ? writeBlob(data(readLine())) : blobRef(words[1]);
+                files.put(fileName(words[2]), blobID);
+            } else {
+                _pushedBack = line;
+                break;
+            }
+        }
+
+        Commit commit = new Commit(message, parent1, parent2);
+        commit.timeStamp = timeStamp;
+        commit.fileMap = files;
+        String commitID = commit.saveToFile();
+        _files.put(commitID, files);
+        _branches.put(branch, commitID);
+        if (mark != null) {
+            _marks.put(mark, commitID);
+        }
+    }
+
+    /** Read the rest of a "reset" command on BRANCH. */
+    private void reset(String branch) throws IOException {
+        String line = readLine();
+        if (line != null && line.startsWith("from ")) {
+            _branches.put(branch, commitRef(line.substring(5)));
+        } else {
+            _pushedBack = line;
+        }
+    }
+
+    /** Make all objects written durable, then update the branches. */
+    private void checkpoint() {
+        ObjectStore.flushAll();
+        _metadata.branchMap.putAll(_branches);
+        _metadata.head = _metadata.branchMap.get(_metadata.currentBranch);
+        _metadata.saveToFile();
+    }
+
+    /** Store the blob CONTENTS, and return its ID. */
+    private String writeBlob(byte[] contents) {
+        String id = Utils.sha1(contents);
+        Blob.write(id, contents);
+        return id;
+    }
+
+    /** Return the mark given by an optional "mark" line, or null. */
+    private String mark() throws IOException {
+        String line = readLine();
+        if (line != null && line.startsWith("mark ")) {
+            String mark = line.substring(5);
+            if (!mark.startsWith(":")) {
+                error("bad mark " + mark);
+            }
+            return mark;
+        }
+        _pushedBack = line;
+        return null;
+    }
+
+    /** Return the bytes given by the "data" line LINE and those after it. */
+    private byte[] data(String line) throws IOException {
+        if (line == null || !line.startsWith("data ")) {
+            error("expected data");
+        }
+        int length = 0;
+        try {
+            length = Integer.parseInt(line.substring(5));
+        } catch (NumberFormatException excp) {
+            error("bad data length " + line.substring(5));
+        }
+        byte[] result = _in.readNBytes(length);
+        if (result.length != length) {
+            error("data truncated");
+        }
+        _in.mark(1);
+        if (_in.read() != '\n') {
+            _in.reset();
+        }
+        _lineNumber += countNewlines(result);
+        return result;
+    }
+
+    /** Return the commit ID named by REF. */
+    private String commitRef(String ref) {
+        if (ref.startsWith(":")) {
+            String id = _marks.get(ref);
+            if (id == null || !ObjectStore.local().contains("commits", id)) {
+                error("no commit marked " + ref);
+            }
+            return id;
+        }
+        String id = _branches.get(ref);
+        return id != null ? id : Main.resolveCommitID(ref);
+    }
+
+    /** Return the blob ID named by REF. */
+    private String blobRef(String ref) {
+        String id = ref.startsWith(":") ? _marks.get(ref) : ref;
+        if (id == null || !Blob.exists(id)) {
+            error("no blob " + ref);
+        }
+        return id;
+    }
+
+    /** Return NAME if it names a file of the working directory. */
+    private String fileName(String name) {
+        if (name.isEmpty() || name.contains("/") || name.equals(".") || name.equals("..")) {
+            error("bad file name " + name);
+        }
+        return name;
+    }
+
+    /** Return the argument of the command WORDS. */
+    private String argument(String[] words) {
+        if (words.length != 2 || words[1].isEmpty()) {
+            error(words[0] + " needs an argument");
+        }
+        return words[1];
+    }
+
+    /** Return the next command line, skipping blank and comment lines, or
+     *  null at the end of the stream. */
+    private String nextCommand() throws IOException {
+        String line;
+        do {
+            line = readLine();
+        } while (line != null && (line.isEmpty() || line.startsWith("#")));
+        return line;
+    }
+
+    /** Return the next line, without its newline, or null at the end of
+     *  the stream. */
+    private String readLine() throws IOException {
+        if (_pushedBack != null) {
+            String line = _pushedBack;
+            _pushedBack = null;
+            return line;
+        }
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = _in.read()) != -1 && c != '\n') {
+            line.write(c);
+        }
+        if (c == -1 && line.size() == 0) {
+            return null;
+        }
+        _lineNumber += 1;
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Return the number of newlines in BYTES. */
+    private static int countNewlines(byte[] bytes) {
+        int result = 0;
+        for (byte b : bytes) {
+            if (b == '\n') {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Report a malformed stream, with the problem MESSAGE, and exit. */
+    private void error(String message) {
+        Main.exitWithError("fast-import: line " + _lineNumber + ": " + message);
+    }
+
+    /** The stream. */
+    private final BufferedInputStream _in;
+
+    /** A line read but not used, to be returned by the next readLine. */
+    private String _pushedBack;
+
+    /** The number of lines read so far. */
+    private int _lineNumber;
+
+    /** The metadata, updated at each checkpoint. */
+    private final Metadata _metadata;
+
+    /** The tip of each branch, as imported so far. */
+    private final Map<String, String> _branches;
+
+    /** The objects named by marks. */
+    private final Map<String, String> _marks = new HashMap<>();
+
+    /** The files of the tips of the branches committed to, which the
+     *  next commit made on one of them takes and changes. */
+    private final Map<String, Map<String, String>> _files = new HashMap<>();
+}
@@ -0,0 +1,326 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static gitlet.Main.*;
+
+/** A check of the integrity of the object store, for "fsck".  Every blob,
+ *  chunk, manifest and commit is rehashed and compared with its name,
+ *  every parent, manifest, blob and chunk that a commit, manifest or chunk
+ *  list names must be stored, and objects that no branch reaches are
+ *  reported.  Each kind of object is read in parallel; in a loose store,
+ *  in order of i-node number (roughly the order of the files on disk),
+ *  and files are hashed through a fixed-size buffer, so memory grows with
+ *  the number of objects but not with their size.
+ *  @author
+ */
+class Fsck {
+
+    /** Size of the buffer through which each thread hashes files. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** A check that reports unreachable objects that are referenced by
+     *  other unreachable objects iff UNREACHABLE; dangling objects, which
+     *  nothing refers to, are always reported. */
+    Fsck(boolean unreachable) {
+        _unreachable = unreachable;
+    }
+
+    /** Return the problems found, in order. */
+    List<String> run() {
+        try (Trace.Span span = Trace.span("fsck.commits")) {
+            ids("manifests").parallelStream()
+                .forEach(id -> checkHash("manifest", "manifests", id));
+            ids("commits").parallelStream().forEach(this::checkCommit);
+        }
+        try (Trace.Span span = Trace.span("fsck.blobs")) {
+            ids("blobs").parallelStream().forEach(id -> checkHash("blob", "blobs", id));
+            ordered(GITLET_PROMISED).parallelStream()
+                .forEach(id -> checkHash("blob", "promised", id));
+            ids("chunks").parallelStream().forEach(id -> checkHash("chunk", "chunks", id));
+            ids("chunked").parallelStream().forEach(this::checkChunkList);
+        }
+        try (Trace.Span span = Trace.span("fsck.connectivity")) {
+            checkConnectivity();
+        }
+        List<String> result = new ArrayList<>(_problems);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Check the commit named ID, and record what it refers to. */
+    private void checkCommit(String id) {
+        Trace.count("fsck.commits");
+        Commit commit;
+        try {
+            byte[] contents = _store.read("commits", id);
+            if (contents == null || !Utils.sha1(contents).equals(id)) {
+                throw new IOException("hash mismatch");
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(contents))) {
+                commit = (Commit) in.readObject();
+            }
+        } catch (IOException | ClassNotFoundException | ClassCastException
+                 | IllegalArgumentException excp) {
+            _problems.add("corrupt commit " + id);
+            _corrupt.add(id);
+            return;
+        }
+        _parents.put(id, new String[]{commit.parent1, commit.parent2});
+        Map<String, String> files;
+        try {
+            files = Manifest.read(_store, commit.manifest);
+        } catch (IllegalArgumentException excp) {
+            // A corrupt manifest is reported when its hash is checked
+            if (size("manifests", commit.manifest) < 0) {
+                _problems.add("missing manifest " + commit.manifest);
+            }
+            return;
+        }
+        _manifests.put(id, commit.manifest);
+        for (String blob : files.values()) {
+            _blobRefs.computeIfAbsent(blob, k -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    /** Check the chunk list of the blob named ID, and record the chunks it
+     *  refers to.  The chunks themselves are checked separately. */
+    private void checkChunkList(String id) {
+        Trace.count("fsck.objects");
+        _stored.add(id);
+        ChunkList chunkList;
+        try {
+            chunkList = Utils.deserialize(_store.read("chunked", id), ChunkList.class);
+        } catch (IllegalArgumentException excp) {
+            _problems.add("corrupt blob " + id);
+            return;
+        }
+        long size = 0;
+        for (int i = 0; i < chunkList.chunkIDs.size(); i += 1) {
+            String chunkID = chunkList.chunkIDs.get(i);
+            _chunkRefs.add(chunkID);
+            long chunkSize = size("chunks", chunkID);
+            if (chunkSize < 0) {
+                _problems.add("missing chunk " + chunkID);
+            } else if (chunkSize != chunkList.chunkSizes[i]) {
+                _problems.add("corrupt blob " + id);
+            }
+            size += chunkList.chunkSizes[i];
+        }
+        if (size != chunkList.size) {
+            _problems.add("corrupt blob " + id);
+        }
+    }
+
+    /** Check that object ID, a KIND stored in FOLDER (a kind of object, or
+     *  a folder of GITLET), hashes to ID. */
+    private void checkHash(String kind, String folder, String id) {
+        Trace.count("fsck.objects");
+        if (kind.equals("blob")) {
+            _stored.add(id);
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            if (_loose || !ObjectStore.KINDS.contains(folder)) {
+                byte[] buffer = BUFFER.get();
+                try (InputStream in = Files.newInputStream(Utils.join(GITLET, folder, id).toPath())) {
+                    for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                        md.update(buffer, 0, n);
+                        Trace.count("fsck.bytes", n);
+                    }
+                }
+            } else {
+                byte[] contents = _store.read(folder, id);
+                md.update(contents);
+                Trace.count("fsck.bytes", contents.length);
+            }
+            if (HexFormat.of().formatHex(md.digest()).equals(id)) {
+                return;
+            }
+        } catch (IOException excp) {
+            // Reported below
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        _problems.add("corrupt " + kind + " " + id);
+    }
+
+    /** Report missing, dangling and unreachable objects. */
+    private void checkConnectivity() {
+        // Commits reachable from the branches
+        Metadata metadata = Metadata.readFromFile();
+        Set<String> reachable = new HashSet<>();
+        Queue<String> queue = new ArrayDeque<>(metadata.branchMap.values());
+        queue.add(metadata.head);
+        while (!queue.isEmpty()) {
+            String id = queue.remove();
+            if (!reachable.add(id) || _corrupt.contains(id)) {
+                continue;
+            }
+            String[] parents = _parents.get(id);
+            if (parents == null) {
+                _problems.add("missing commit " + id);
+                continue;
+            }
+            for (String parent : parents) {
+                if (parent != null) {
+                    queue.add(parent);
+                }
+            }
+        }
+
+        // Commits nothing reaches; those no other commit names are dangling
+        Set<String> referenced = new HashSet<>();
+        for (String[] parents : _parents.values()) {
+            referenced.addAll(Arrays.asList(parents));
+        }
+        for (Map.Entry<String, String[]> entry : _parents.entrySet()) {
+            String id = entry.getKey();
+            if (reachable.contains(id)) {
+                continue;
+            }
+            if (!referenced.contains(id)) {
+                _problems.add("dangling commit " + id);
+            } else if (_unreachable) {
+                _problems.add("unreachable commit " + id);
+            }
+            String manifest = _manifests.get(id);
+            if (manifest == null) {
+                continue;
+            }
+            for (String blob : Manifest.read(_store, manifest).values()) {
+                _blobRefs.get(blob).decrementAndGet();
+            }
+        }
+        Set<String> named = new HashSet<>(_manifests.values());
+        for (String manifest : ids("manifests")) {
+            if (!named.contains(manifest)) {
+                _problems.add("dangling manifest " + manifest);
+            }
+        }
+
+        // Staged blobs are not dangling either
+        Stage stage = Stage.readFromFile();
+        for (Map<String, String> staged : List.of(stage.fileMapAddition, stage.fileMapDeletion)) {
+            for (String blob : staged.values()) {
+                _blobRefs.computeIfAbsent(blob, k -> new AtomicInteger()).incrementAndGet();
+            }
+        }
+
+        // Blobs: a blobless clone leaves the missing ones with its promisor
+        boolean partial = GITLET_PROMISOR.exists();
+        for (Map.Entry<String, AtomicInteger> entry : _blobRefs.entrySet()) {
+            if (!_stored.contains(entry.getKey()) && !partial) {
+                _problems.add("missing blob " + entry.getKey());
+            }
+        }
+        for (String blob : _stored) {
+            AtomicInteger refs = _blobRefs.get(blob);
+            if (refs == null) {
+                _problems.add("dangling blob " + blob);
+            } else if (refs.get() == 0 && _unreachable) {
+                _problems.add("unreachable blob " + blob);
+            }
+        }
+        for (String chunk : ids("chunks")) {
+            if (!_chunkRefs.contains(chunk)) {
+                _problems.add("dangling chunk " + chunk);
+            }
+        }
+    }
+
+    /** Return the IDs of the objects of kind KIND: for a loose store, in
+     *  order of i-node number. */
+    private List<String> ids(String kind) {
+        return _loose ? ordered(Utils.join(GITLET, kind)) : _store.list(kind);
+    }
+
+    /** Return the size of object ID of kind KIND, or -1 if it is not
+     *  stored. */
+    private long size(String kind, String id) {
+        if (_loose) {
+            File file = Utils.join(GITLET, kind, id);
+            return file.isFile() ? file.length() : -1;
+        }
+        byte[] contents = _store.read(kind, id);
+        return contents == null ? -1 : contents.length;
+    }
+
+    /** Return the names of the files in DIR, in order of i-node number if
+     *  the file system has them, and otherwise by name. */
+    private static List<String> ordered(File dir) {
+        String[] names = dir.list();
+        if (names == null) {
+            return List.of();
+        }
+        Map<String, Long> inodes = new ConcurrentHashMap<>();
+        Arrays.stream(names).parallel().forEach(name -> {
+            try {
+                Object inode = Files.getAttribute(Utils.join(dir, name).toPath(), "unix:ino");
+                inodes.put(name, (Long) inode);
+            } catch (IOException | UnsupportedOperationException | IllegalArgumentException excp) {
+                inodes.put(name, 0L);
+            }
+        });
+        List<String> result = new ArrayList<>(Arrays.asList(names));
+        result.sort(Comparator.comparing((String name) -> inodes.get(name))
+                    .thenComparing(Comparator.naturalOrder()));
+        return result;
+    }
+
+    /** Per-thread buffers for hashing. */
+    private static final ThreadLocal<byte[]> BUFFER =
+        ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    /** The object store checked. */
+    private final ObjectStore _store = ObjectStore.local();
+
+    /** True iff _store keeps each object in a file of its own. */
+    private final boolean _loose = _store instanceof LooseStore;
+
+    /** True iff unreachable objects that are not dangling are reported. */
+    private final boolean _unreachable;
+
+    /** The problems found. */
+    private final Queue<String> _problems = new ConcurrentLinkedQueue<>();
+
+    /** The parents of each sound commit. */
+    private final Map<String, String[]> _parents = new ConcurrentHashMap<>();
+
+    /** The manifest of each sound commit whose manifest could be read. */
+    private final Map<String, String> _manifests = new ConcurrentHashMap<>();
+
+    /** Commits that could not be read. */
+    private final Set<String> _corrupt = ConcurrentHashMap.newKeySet();
+
+    /** For each blob named by some commit, the number of commits naming
+     *  it; after checkConnectivity, of reachable commits naming it. */
+    private final Map<String, AtomicInteger> _blobRefs = new ConcurrentHashMap<>();
+
+    /** The blobs that are stored, whole, chunked or fetched. */
+    private final Set<String> _stored = ConcurrentHashMap.newKeySet();
+
+    /** The chunks named by some chunk list. */
+    private final Set<String> _chunkRefs = ConcurrentHashMap.newKeySet();
+}
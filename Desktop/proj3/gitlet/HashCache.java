@@ -0,0 +1,46 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static gitlet.Main.GITLET_HASH_CACHE;
+
+/** SHA-1s of working files computed by earlier commands, valid for the
+ *  files a watcher (of epoch EPOCH) has not seen change since its sequence
+ *  number SEQUENCE.
+ *  @author
+ */
+public class HashCache implements Dumpable {
+
+    public long epoch;
+
+    public long sequence;
+
+    public Map<String, String> hashes;
+
+    public HashCache() {};
+
+    public HashCache(long epoch) {
+        this.epoch = epoch;
+        hashes = new HashMap<>();
+    }
+
+    public void saveToFile() {
+        HashCache newCache = new HashCache();
+        newCache.epoch = epoch;
+        newCache.sequence = sequence;
+        newCache.hashes = hashes;
+        Utils.writeObject(GITLET_HASH_CACHE, newCache);
+    }
+
+    public static HashCache readFromFile() {
+        return Utils.readObject(GITLET_HASH_CACHE, HashCache.class);
+    }
+
+    @Override
+    public void dump() {
+        System.out.println("Epoch: " + epoch);
+        System.out.println("Sequence: " + sequence);
+        System.out.println("Hashes: " + hashes.toString());
+    }
+}
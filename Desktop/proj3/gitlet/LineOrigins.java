@@ -0,0 +1,50 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Main.GITLET_BLAME;
+
+/** The result of blaming one version of a file: for each of its lines, the
+ *  ID of the commit that introduced it.  Cached in GITLET_BLAME under the
+ *  blob ID and the commit that introduced that blob, since neither the
+ *  contents nor the history behind them can change.
+ *  @author
+ */
+public class LineOrigins implements Dumpable {
+
+    public List<String> commitIDs;
+
+    public LineOrigins() {
+        commitIDs = new ArrayList<>();
+    }
+
+    public void saveToFile(String blobID, String commitID) {
+        GITLET_BLAME.mkdir();
+        LineOrigins newOrigins = new LineOrigins();
+        newOrigins.commitIDs = commitIDs;
+        Utils.writeObject(cacheFile(blobID, commitID), newOrigins);
+    }
+
+    /** Return the cached origins of blob BLOBID as introduced by commit
+     *  COMMITID, or null if they are not cached. */
+    public static LineOrigins readFromFile(String blobID, String commitID) {
+        File file = cacheFile(blobID, commitID);
+        if (!file.exists()) {
+            return null;
+        }
+        return Utils.readObject(file, LineOrigins.class);
+    }
+
+    private static File cacheFile(String blobID, String commitID) {
+        return Utils.join(GITLET_BLAME, blobID + "-" + commitID);
+    }
+
+    @Override
+    public void dump() {
+        for (String commitID : commitIDs) {
+            System.out.println(commitID);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A shortest edit script between two sequences of lines, found by Myers'
+ *  O(ND) algorithm in its linear-space form: each step finds the middle
+ *  snake of an optimal path by searching from both ends at once, then
+ *  recurses on the two halves.  Unlike Diff, which keeps a table of size
+ *  proportional to the product of the lengths, this needs space only
+ *  proportional to their sum.
+ *  @author
+ */
+class LinearDiff {
+
+    /** Return the edit that converts LINES1 to LINES2, in the format of
+     *  Diff.diffs: a sequence of 4n values d0, dL0, a0, aL0, ... meaning
+     *  that lines [di .. di + dLi - 1] of LINES1 are replaced by lines
+     *  [ai .. ai + aLi - 1] of LINES2. */
+    static int[] diffs(List<String> lines1, List<String> lines2) {
+        return new LinearDiff(lines1, lines2).edits();
+    }
+
+    /** A comparison of LINES1 and LINES2. */
+    private LinearDiff(List<String> lines1, List<String> lines2) {
+        // Compare small integers rather than strings
+        Map<String, Integer> ids = new HashMap<>();
+        _x = new int[lines1.size()];
+        _y = new int[lines2.size()];
+        for (int i = 0; i < _x.length; i += 1) {
+            _x[i] = ids.computeIfAbsent(lines1.get(i), k -> ids.size());
+        }
+        for (int i = 0; i < _y.length; i += 1) {
+            _y[i] = ids.computeIfAbsent(lines2.get(i), k -> ids.size());
+        }
+        _deleted = new boolean[_x.length];
+        _inserted = new boolean[_y.length];
+        int size = 2 * (_x.length + _y.length) + 3;
+        _forward = new int[size];
+        _backward = new int[size];
+        _offset = _x.length + _y.length + 1;
+    }
+
+    /** Return the edits, as for diffs. */
+    private int[] edits() {
+        compare(0, _x.length, 0, _y.length);
+
+        List<Integer> result = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < _x.length || j < _y.length) {
+            if (i < _x.length && j < _y.length && !_deleted[i] && !_inserted[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int i0 = i, j0 = j;
+            while (i < _x.length && _deleted[i]) {
+                i += 1;
+            }
+            while (j < _y.length && _inserted[j]) {
+                j += 1;
+            }
+            result.add(i0);
+            result.add(i - i0);
+            result.add(j0);
+            result.add(j - j0);
+        }
+        int[] edits = new int[result.size()];
+        for (int k = 0; k < edits.length; k += 1) {
+            edits[k] = result.get(k);
+        }
+        return edits;
+    }
+
+    /** Mark the lines deleted from _x[XLO .. XHI-1] and inserted into
+     *  _y[YLO .. YHI-1] by a shortest edit between them. */
+    private void compare(int xlo, int xhi, int ylo, int yhi) {
+        while (xlo < xhi && ylo < yhi && _x[xlo] == _y[ylo]) {
+            xlo += 1;
+            ylo += 1;
+        }
+        while (xlo < xhi && ylo < yhi && _x[xhi - 1] == _y[yhi - 1]) {
+            xhi -= 1;
+            yhi -= 1;
+        }
+        if (xlo == xhi || ylo == yhi) {
+            for (int i = xlo; i < xhi; i += 1) {
+                _deleted[i] = true;
+            }
+            for (int j = ylo; j < yhi; j += 1) {
+                _inserted[j] = true;
+            }
+            return;
+        }
+
+        long middle = middleSnake(xlo, xhi, ylo, yhi);
+        int xmid = (int) (middle >> 32), ymid = (int) middle;
+        if ((xmid == xlo && ymid == ylo) || (xmid == xhi && ymid == yhi)) {
+            // Cannot happen with the ends trimmed, but never loop forever
+            compare(xhi, xhi, ylo, yhi);
+            compare(xlo, xhi, yhi, yhi);
+            return;
+        }
+        compare(xlo, xmid, ylo, ymid);
+        compare(xmid, xhi, ymid, yhi);
+    }
+
+    /** Return a point (x, y), packed as x << 32 | y, that lies on a
+     *  shortest edit path from (XLO, YLO) to (XHI, YHI). */
+    private long middleSnake(int xlo, int xhi, int ylo, int yhi) {
+        int n = xhi - xlo, m = yhi - ylo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int[] fwd = _forward, bwd = _backward;
+        int off = _offset;
+        fwd[off + 1] = 0;
+        bwd[off + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+            // Forward paths, on diagonal k = x - y
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && fwd[off + k - 1] < fwd[off + k + 1])
+                    ? fwd[off + k + 1] : fwd[off + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && _x[xlo + x] == _y[ylo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                fwd[off + k] = x;
+                if (odd && Math.abs(delta - k) <= d - 1 && x + bwd[off + delta - k] >= n) {
+                    return ((long) (xlo + x) << 32) | (ylo + y);
+                }
+            }
+            // Backward paths, measured from the far corner
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && bwd[off + k - 1] < bwd[off + k + 1])
+                    ? bwd[off + k + 1] : bwd[off + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && _x[xhi - 1 - x] == _y[yhi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                bwd[off + k] = x;
+                if (!odd && Math.abs(delta - k) <= d && x + fwd[off + delta - k] >= n) {
+                    return ((long) (xhi - x) << 32) | (yhi - y);
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** The sequences being compared, each distinct line replaced by a
+     *  small integer. */
+    private final int[] _x, _y;
+
+    /** Marks of the lines of _x that are deleted and of _y inserted. */
+    private final boolean[] _deleted, _inserted;
+
+    /** Furthest-reaching forward and backward paths, indexed by diagonal
+     *  plus _offset. */
+    private final int[] _forward, _backward;
+
+    /** Index of diagonal 0 in _forward and _backward. */
+    private final int _offset;
+}
@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static gitlet.Main.GITLET_BLOBS;
+
+/** Writing of working files, which checkout --link may make hard links to
+ *  the blobs of GITLET_BLOBS rather than copies, so that a checkout does
+ *  no more than create directory entries.  That is safe only because a
+ *  whole blob is stored uncompressed and never rewritten: a blob is made
+ *  read-only before it is linked, and every command that writes a working
+ *  file goes through write, which first replaces a linked file rather than
+ *  writing through the link into the store.  Chunked and promised blobs
+ *  are always copied.
+ *  @author
+ */
+class Links {
+
+    /** Permissions that allow nobody to write a file. */
+    private static final Set<PosixFilePermission> READ_ONLY =
+        EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.GROUP_READ,
+                   PosixFilePermission.OTHERS_READ);
+
+    /** Make FILE have the contents of the blob named ID, as a hard link to
+     *  the stored blob if LINK and that is possible, and as a copy
+     *  otherwise. */
+    static void checkout(File file, String id, boolean link) {
+        if (link && linkBlob(file, id)) {
+            Trace.count("checkout.linked");
+            return;
+        }
+        write(file, Blob.read(id));
+    }
+
+    /** Make FILE, a working file, have CONTENTS, without disturbing the
+     *  blob to which it may be linked. */
+    static void write(File file, byte[] contents) {
+        breakLink(file);
+        Utils.writeContents(file, contents);
+    }
+
+    /** If FILE is a hard link, perhaps to a blob, replace it by a private,
+     *  writable copy, so that changes to it cannot reach the store. */
+    static void breakLink(File file) {
+        if (!isLinked(file)) {
+            return;
+        }
+        Trace.count("checkout.linksBroken");
+        byte[] contents = Utils.readContents(file);
+        file.delete();
+        Utils.writeContents(file, contents);
+    }
+
+    /** Return true iff FILE is a plain file with more than one link. */
+    static boolean isLinked(File file) {
+        try {
+            return file.isFile() && (Integer) Files.getAttribute(file.toPath(), "unix:nlink") > 1;
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException excp) {
+            return false;
+        }
+    }
+
+    /** Make FILE a hard link to the whole, read-only blob ID, returning
+     *  false if that cannot be done. */
+    private static boolean linkBlob(File file, String id) {
+        if (_linksFail) {
+            return false;
+        }
+        Path blob = Utils.join(GITLET_BLOBS, id).toPath();
+        try {
+            if (!Files.isRegularFile(blob)) {
+                return false;
+            }
+            if (!Files.getPosixFilePermissions(blob).equals(READ_ONLY)) {
+                Files.setPosixFilePermissions(blob, READ_ONLY);
+            }
+            Path target = file.toPath();
+            if (Files.isRegularFile(target) && Files.isSameFile(target, blob)) {
+                return true;
+            }
+            Files.deleteIfExists(target);
+            Files.createLink(target, blob);
+            return true;
+        } catch (FileSystemException | UnsupportedOperationException excp) {
+            // Probably another file system, or no POSIX permissions
+            _linksFail = true;
+            return false;
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Set once a link has failed. */
+    private static boolean _linksFail;
+}
@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** The original object store: each object is a file named by its ID in
+ *  the folder of the .gitlet directory named by its kind.  Objects are
+ *  written without syncing; flush forces the files written since the last
+ *  flush, and then each folder they were added to (and the .gitlet
+ *  directory, if a folder was made), once per folder.
+ *  @author
+ */
+class LooseStore implements ObjectStore {
+
+    /** The store of the .gitlet directory DIR. */
+    LooseStore(File dir) {
+        _dir = dir;
+    }
+
+    @Override
+    public boolean contains(String kind, String id) {
+        return Utils.join(_dir, kind, id).exists();
+    }
+
+    @Override
+    public byte[] read(String kind, String id) {
+        File file = Utils.join(_dir, kind, id);
+        return file.exists() ? Utils.readContents(file) : null;
+    }
+
+    @Override
+    public void write(String kind, String id, byte[] contents) {
+        File file = Utils.join(_dir, kind, id);
+        if (file.exists()) {
+            return;
+        }
+        boolean made = file.getParentFile().mkdir();
+        Utils.writeContents(file, contents);
+        synchronized (this) {
+            _unsynced.add(file);
+            _unsyncedDirs.add(file.getParentFile());
+            if (made) {
+                _unsyncedDirs.add(_dir);
+            }
+        }
+    }
+
+    @Override
+    public List<String> list(String kind) {
+        List<String> result = Utils.plainFilenamesIn(Utils.join(_dir, kind));
+        return result == null ? List.of() : result;
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (_unsynced.isEmpty()) {
+            return;
+        }
+        try (Trace.Span span = Trace.span("objects.flush")) {
+            for (File file : _unsynced) {
+                force(file);
+            }
+            for (File dir : _unsyncedDirs) {
+                force(dir);
+            }
+        }
+        _unsynced.clear();
+        _unsyncedDirs.clear();
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /** Force the contents of FILE, which may be a directory, to disk. */
+    private static void force(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw new UncheckedIOException(excp);
+            }
+            // Not every platform can open or sync a directory
+        }
+    }
+
+    /** The .gitlet directory. */
+    private final File _dir;
+
+    /** Objects written since the last flush. */
+    private final List<File> _unsynced = new ArrayList<>();
+
+    /** Folders whose entries have changed since the last flush. */
+    private final Set<File> _unsyncedDirs = new LinkedHashSet<>();
+}
@@ -1,8 +1,16 @@
 package gitlet;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author
@@ -21,19 +29,101 @@ public class Main {
     /** Gitlet commit folder. */
     public static final File GITLET_COMMITS = Utils.join(GITLET, "/commits");
 
+    /** Gitlet folder of commit manifests. */
+    public static final File GITLET_MANIFESTS = Utils.join(GITLET, "/manifests");
+
     /** Gitlet stage_add file. */
     public static final File GITLET_STAGE = Utils.join(GITLET, "/stage");
 
     /** Gitlet blobs folder. */
     public static final File GITLET_BLOBS = Utils.join(GITLET, "/blobs");
 
+    /** Gitlet folder of chunk lists for large (chunked) blobs. */
+    public static final File GITLET_CHUNKED = Utils.join(GITLET, "/chunked");
+
+    /** Gitlet folder of chunks of large blobs. */
+    public static final File GITLET_CHUNKS = Utils.join(GITLET, "/chunks");
+
+    /** Working-directory state kept by a running watcher. */
+    public static final File GITLET_WATCH_STATE = Utils.join(GITLET, "/watch-state");
+
+    /** Lock held by a running watcher. */
+    public static final File GITLET_WATCH_LOCK = Utils.join(GITLET, "/watch.lock");
+
+    /** Folder of cookies used to synchronize with the watcher. */
+    public static final File GITLET_WATCH_COOKIES = Utils.join(GITLET, "/watch-cookies");
+
+    /** Cached hashes of working files, valid while the watcher runs. */
+    public static final File GITLET_HASH_CACHE = Utils.join(GITLET, "/hash-cache");
+
+    /** Cached results of blame, by blob and commit. */
+    public static final File GITLET_BLAME = Utils.join(GITLET, "/blame");
+
+    /** Cached similarity sketches of blobs, for rename detection. */
+    public static final File GITLET_SKETCHES = Utils.join(GITLET, "/sketches");
+
+    /** Gitlet folder of per-commit filters of changed file names. */
+    public static final File GITLET_CHANGED_PATHS = Utils.join(GITLET, "/changed-paths");
+
+    /** Gitlet file of remote names and locations. */
+    public static final File GITLET_REMOTES = Utils.join(GITLET, "/remotes");
+
+    /** Gitlet file naming the promisor remote of a blobless clone. */
+    public static final File GITLET_PROMISOR = Utils.join(GITLET, "/promisor");
+
+    /** Gitlet folder caching blobs fetched from the promisor. */
+    public static final File GITLET_PROMISED = Utils.join(GITLET, "/promised");
+
+    /** Gitlet file of sparse-checkout patterns. */
+    public static final File GITLET_SPARSE = Utils.join(GITLET, "/sparse");
+
+    /** In a linked worktree, link to the main worktree's .gitlet. */
+    public static final File GITLET_COMMON = Utils.join(GITLET, "/common");
+
+    /** Gitlet folder listing the linked worktrees. */
+    public static final File GITLET_WORKTREES = Utils.join(GITLET, "/worktrees");
+
+    /** Gitlet file of reachability bitmaps. */
+    public static final File GITLET_BITMAPS = Utils.join(GITLET, "/bitmaps");
+
+    /** The most files the diff command diffs at once, so that only their
+     *  diffs wait in memory to be printed, however many files changed. */
+    static final int DIFF_WINDOW = 2 * Runtime.getRuntime().availableProcessors();
+
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) throws IOException {
+        args = Trace.configure(args);
         if (args.length == 0) {
             exitWithError("Please enter a command.");
         }
+        if (args[0].equals("--batch")) {
+            validateNumArgs(args, 1);
+            Batch.run();
+            finish();
+            Trace.report();
+            return;
+        }
+
+        try (Trace.Span span = Trace.span(args[0])) {
+            dispatch(args);
+        }
+        finish();
+        Trace.report();
+    }
+
+    /** Save what this command's caches hold that must outlive it, and
+     *  release the object stores. */
+    private static void finish() {
+        ObjectStore.finish();
+        WorkingTree.finish();
+        Promisor.finish();
+        Sparse.finish();
+        Bitmaps.finish();
+    }
 
+    /** Run the command given by ARGS. */
+    static void dispatch(String[] args) throws IOException {
         switch (args[0]) {
             case "init":
                 init(args);
@@ -74,6 +164,60 @@ public class Main {
             case "merge":
                 merge(args);
                 break;
+            case "watch":
+                watch(args);
+                break;
+            case "diff":
+                diff(args);
+                break;
+            case "blame":
+                blame(args);
+                break;
+            case "add-remote":
+                addRemote(args);
+                break;
+            case "rm-remote":
+                removeRemote(args);
+                break;
+            case "push":
+                push(args);
+                break;
+            case "fetch":
+                fetch(args);
+                break;
+            case "pull":
+                pull(args);
+                break;
+            case "clone":
+                cloneRepository(args);
+                break;
+            case "sparse":
+                sparse(args);
+                break;
+            case "cherry-pick":
+                cherryPick(args);
+                break;
+            case "rebase":
+                rebase(args);
+                break;
+            case "fsck":
+                fsck(args);
+                break;
+            case "maintenance":
+                maintenance(args);
+                break;
+            case "count":
+                count(args);
+                break;
+            case "worktree":
+                worktree(args);
+                break;
+            case "fast-import":
+                fastImport(args);
+                break;
+            case "archive":
+                archive(args);
+                break;
 
             default:
                 exitWithError("No command with that name exists.");
@@ -81,22 +225,33 @@ public class Main {
     }
 
     public static void init(String[] args) throws IOException {
-        validateNumArgs(args, 1);
+        boolean btree = args.length == 2 && args[1].equals("--btree");
+        if (!btree) {
+            validateNumArgs(args, 1);
+        }
         if (isInited()) {
             exitWithError("A Gitlet version-control system already exists in the current directory.");
         }
 
         // Init files and dirs
         GITLET.mkdir();
-        GITLET_BLOBS.mkdir();
-        GITLET_COMMITS.mkdir();
+        if (btree) {
+            BTreeStore.create(GITLET);
+        } else {
+            GITLET_BLOBS.mkdir();
+            GITLET_CHUNKED.mkdir();
+            GITLET_CHUNKS.mkdir();
+            GITLET_COMMITS.mkdir();
+            GITLET_MANIFESTS.mkdir();
+        }
+        GITLET_CHANGED_PATHS.mkdir();
         GITLET_META.createNewFile();
         GITLET_STAGE.createNewFile();
 
         // Create new commit
         Commit commit = new Commit("initial commit", null, null);
-        String commitUid = Utils.sha1(Utils.serialize(commit));
-        commit.saveToFile(commitUid);
+        String commitUid = commit.saveToFile();
+        new ChangedPaths(null, List.of()).saveToFile(commitUid);
 
         // Set up metadata
         Metadata metadata = new Metadata(commitUid, "master");
@@ -108,27 +263,64 @@ public class Main {
     }
 
     public static void log(String[] args) {
-        validateNumArgs(args, 1);
+        if (args.length == 2 || (args.length > 2 && !args[1].equals("--"))) {
+            exitWithError("Incorrect operands.");
+        }
         if (!isInited()) {
             exitWithError("Not in an initialized Gitlet directory.");
         }
+        if (args.length > 2) {
+            logPaths(Arrays.asList(args).subList(2, args.length));
+            return;
+        }
 
         Metadata metadata = Metadata.readFromFile();
         String currentCommitID = metadata.head;
         while (currentCommitID != null) {
-            System.out.println("===");
-            System.out.println("commit " + currentCommitID);
             Commit curCommit = Commit.readFromFile(currentCommitID);
-            // Check if it's a merge commit
-            if (curCommit.parent2 != null) {
-                System.out.println("Merge: " +
-                        curCommit.parent1.substring(0, 7) + " " + curCommit.parent2.substring(0, 7));
-            }
-            curCommit.printLog();
+            printLogEntry(currentCommitID, curCommit);
             currentCommitID = curCommit.parent1;
         }
     }
 
+    /** Print the log entries of the commits along the first-parent chain
+     *  from the head that changed any of the files named PATHS.  Commits
+     *  are only loaded when their ChangedPaths filters do not rule them
+     *  out. */
+    private static void logPaths(List<String> paths) {
+        Metadata metadata = Metadata.readFromFile();
+        String currentCommitID = metadata.head;
+        while (currentCommitID != null) {
+            ChangedPaths changed = ChangedPaths.readFromFile(currentCommitID);
+            if (paths.stream().anyMatch(changed::mightContain)) {
+                Commit curCommit = Commit.readFromFile(currentCommitID);
+                Map<String, String> parentFiles = curCommit.parent1 == null ? Map.of()
+                        : Commit.readFromFile(curCommit.parent1).fileMap;
+                if (paths.stream().anyMatch(path ->
+                        !Objects.equals(curCommit.fileMap.get(path), parentFiles.get(path)))) {
+                    printLogEntry(currentCommitID, curCommit);
+                } else {
+                    Trace.count("changedPaths.falsePositives");
+                }
+            } else {
+                Trace.count("changedPaths.skipped");
+            }
+            currentCommitID = changed.parent1;
+        }
+    }
+
+    /** Print the log entry of commit COMMIT, whose ID is COMMITID. */
+    private static void printLogEntry(String commitID, Commit commit) {
+        System.out.println("===");
+        System.out.println("commit " + commitID);
+        // Check if it's a merge commit
+        if (commit.parent2 != null) {
+            System.out.println("Merge: " +
+                    commit.parent1.substring(0, 7) + " " + commit.parent2.substring(0, 7));
+        }
+        commit.printLog();
+    }
+
     public static void add(String[] args) throws IOException {
         validateNumArgs(args, 2);
         if (!isInited()) {
@@ -138,7 +330,11 @@ public class Main {
         String fileName = args[1];
         Metadata metadata = Metadata.readFromFile();
         Stage stage = Stage.readFromFile();
-        stage.addFileToStage(fileName, metadata.head);
+        if (fileName.equals(".")) {
+            stage.addAllFilesToStage(metadata.head);
+        } else {
+            stage.addFileToStage(fileName, metadata.head);
+        }
     }
 
     public static void remove(String[] args) {
@@ -180,8 +376,8 @@ public class Main {
         // Create new commit and save it to the file
         Commit newCommit = new Commit(args[1], metadata.head, null);
         newCommit.setFileMap(parentCommit.fileMap, stage.fileMapAddition, stage.fileMapDeletion);
-        String newCommitUID = Utils.sha1(Utils.serialize(newCommit));
-        newCommit.saveToFile(newCommitUID);
+        String newCommitUID = newCommit.saveToFile();
+        saveChangedPaths(newCommitUID, metadata.head, stage);
 
         // Update current status and persist
         stage.clearMap();
@@ -222,12 +418,22 @@ public class Main {
         if (branchName.equals(metadata.currentBranch)) {
             exitWithError("Cannot remove the current branch.");
         }
+        try (Worktrees.Lock lock = Worktrees.lock()) {
+            if (Worktrees.holder(branchName) != null) {
+                exitWithError("That branch is checked out in another worktree.");
+            }
 
-        metadata.branchMap.remove(branchName);
-        metadata.saveToFile();
+            metadata.branchMap.remove(branchName);
+            metadata.saveToFile();
+        }
     }
 
     public static void checkout(String[] args) throws IOException {
+        boolean link = args.length > 1 && args[1].equals("--link");
+        if (link) {
+            validateNumArgs(args, 3);
+            args = new String[]{args[0], args[2]};
+        }
         if (args.length > 4 || args.length == 1) {
             exitWithError("Incorrect operands.");
         }
@@ -274,30 +480,40 @@ public class Main {
             if (branchName.equals(metadata.currentBranch)) {
                 exitWithError("No need to checkout the current branch.");
             }
+            // No other worktree may check the branch out until we have
+            try (Worktrees.Lock lock = Worktrees.lock()) {
+                if (Worktrees.holder(branchName) != null) {
+                    exitWithError("That branch is checked out in another worktree.");
+                }
 
-            Commit targetCommit = Commit.readFromFile(metadata.branchMap.get(branchName));
-            checkoutCommitFiles(curCommit, targetCommit);
+                Commit targetCommit = Commit.readFromFile(metadata.branchMap.get(branchName));
+                checkoutCommitFiles(curCommit, targetCommit, link);
 
-            // 3. Clear staging area
-            stage.clearMap();
-            stage.saveToFile();
+                // 3. Clear staging area
+                stage.clearMap();
+                stage.saveToFile();
 
-            // Change commit and branch in metadata
-            metadata.currentBranch = branchName;
-            metadata.head = metadata.branchMap.get(branchName);
-            metadata.saveToFile();
+                // Change commit and branch in metadata
+                metadata.currentBranch = branchName;
+                metadata.head = metadata.branchMap.get(branchName);
+                metadata.saveToFile();
+            }
         }
     }
 
     public static void reset(String[] args) throws IOException {
+        boolean link = args.length > 1 && args[1].equals("--link");
+        if (link) {
+            validateNumArgs(args, 3);
+            args = new String[]{args[0], args[2]};
+        }
         validateNumArgs(args, 2);
         if (!isInited()) {
             exitWithError("Not in an initialized Gitlet directory.");
         }
 
         String commitID = args[1];
-        File targetCommitFile = Utils.join(GITLET_COMMITS, commitID);
-        if (!targetCommitFile.exists()) {
+        if (!isCommitExist(commitID)) {
             exitWithError("No commit with that id exists.");
         }
 
@@ -305,7 +521,7 @@ public class Main {
         Stage stage = Stage.readFromFile();
         Commit curCommit = Commit.readFromFile(metadata.head);
         Commit targetCommit = Commit.readFromFile(commitID);
-        checkoutCommitFiles(curCommit, targetCommit);
+        checkoutCommitFiles(curCommit, targetCommit, link);
 
         stage.clearMap();
         stage.saveToFile();
@@ -321,17 +537,9 @@ public class Main {
             exitWithError("Not in an initialized Gitlet directory.");
         }
 
-        List<String> commitFileNameList = Utils.plainFilenamesIn(GITLET_COMMITS);
+        List<String> commitFileNameList = ObjectStore.local().list("commits");
         for (String commitFileName : commitFileNameList) {
-            Commit curCommit = Commit.readFromFile(commitFileName);
-            System.out.println("===");
-            System.out.println("commit " + commitFileName);
-            // Check if it's a merge commit
-            if (curCommit.parent2 != null) {
-                System.out.println("Merge: " +
-                        curCommit.parent1.substring(0, 7) + " " + curCommit.parent2.substring(0, 7));
-            }
-            curCommit.printLog();
+            printLogEntry(commitFileName, Commit.readFromFile(commitFileName));
         }
     }
 
@@ -368,14 +576,20 @@ public class Main {
 
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
-        List<String> modifiedFiles = getModifiedNotStagedFileNames(stage, curCommit);
+        List<String> modifiedFiles;
+        try (Trace.Span span = Trace.span("status.modified")) {
+            modifiedFiles = getModifiedNotStagedFileNames(stage, curCommit);
+        }
         for (String fileName : modifiedFiles) {
             System.out.println(fileName);
         }
 
         System.out.println();
         System.out.println("=== Untracked Files ===");
-        List<String> untrackedFiles = getUntrackedFiles(stage, curCommit);
+        List<String> untrackedFiles;
+        try (Trace.Span span = Trace.span("status.untracked")) {
+            untrackedFiles = getUntrackedFiles(stage, curCommit);
+        }
         for (String fileName : untrackedFiles) {
             System.out.println(fileName);
         }
@@ -387,7 +601,7 @@ public class Main {
             exitWithError("Not in an initialized Gitlet directory.");
         }
 
-        List<String> commitFileNameList = Utils.plainFilenamesIn(GITLET_COMMITS);
+        List<String> commitFileNameList = ObjectStore.local().list("commits");
         boolean isFound = false;
         for (String commitFileName : commitFileNameList) {
             Commit curCommit = Commit.readFromFile(commitFileName);
@@ -433,7 +647,10 @@ public class Main {
         }
         // If the split point is the current branch, then the effect is to check out the given branch
         if (splitCommitID.equals(metadata.head)) {
-            checkout(new String[]{"checkout", branchName});
+            checkoutCommitFiles(currentCommit, Commit.readFromFile(branchCommitID));
+            metadata.head = branchCommitID;
+            metadata.branchMap.put(metadata.currentBranch, branchCommitID);
+            metadata.saveToFile();
             System.out.println("Current branch fast-forwarded.");
             return;
         }
@@ -441,148 +658,716 @@ public class Main {
         // Otherwise
         Commit branchCommit = Commit.readFromFile(branchCommitID);
         Commit splitPointCommit = Commit.readFromFile(splitCommitID);
-        for (String targetFileName : branchCommit.fileMap.keySet()) {
-            if (splitPointCommit.fileMap.containsKey(targetFileName)
-                    && currentCommit.fileMap.containsKey(targetFileName)) {
-                // Any files that have been modified in the given branch since the split point,
-                // but not modified in the current branch since the split point should be changed to
-                // their versions in the given branch
-                if (!branchCommit.fileMap.get(targetFileName).
-                        equals(splitPointCommit.fileMap.get(targetFileName))
-                        && currentCommit.fileMap.get(targetFileName).equals(splitPointCommit.fileMap.get(targetFileName))) {
-                    checkout(new String[]{"checkout", branchCommitID, "--", targetFileName});
-                    autoStageForAddition(targetFileName, branchCommit.fileMap.get(targetFileName));
-
-                    // Both changed, conflict
-                } else if (!branchCommit.fileMap.get(targetFileName).
-                        equals(splitPointCommit.fileMap.get(targetFileName))
-                        && !currentCommit.fileMap.get(targetFileName).
-                        equals(splitPointCommit.fileMap.get(targetFileName))
-                        && !branchCommit.fileMap.get(targetFileName).
-                        equals(currentCommit.fileMap.get(targetFileName))) {
-                    File blobCurFile = Utils.join(GITLET_BLOBS, currentCommit.fileMap.get(targetFileName));
-                    File blobBranchFile = Utils.join(GITLET_BLOBS, branchCommit.fileMap.get(targetFileName));
-                    conflictSolver(targetFileName,
-                            Utils.readContentsAsString(blobCurFile),
-                            Utils.readContentsAsString(blobBranchFile));
-                    System.out.println("Encountered a merge conflict.");
+        checkUntrackedBeforeMerge(splitPointCommit.fileMap, currentCommit.fileMap,
+                                  branchCommit.fileMap);
+        Merger merger = new Merger(splitPointCommit.fileMap, currentCommit.fileMap, branchCommit.fileMap);
+        String commitMessage = "Merged " + branchName + " into " + metadata.currentBranch + ".";
+        Commit mergeCommit = new Commit(commitMessage, metadata.head, branchCommitID);
+        mergeCommit.fileMap = merger.result();
+        applyMerge(currentCommit, merger);
+        String mergeCommitID = saveNewCommit(mergeCommit, currentCommit);
+
+        metadata.head = mergeCommitID;
+        metadata.branchMap.put(metadata.currentBranch, mergeCommitID);
+        metadata.saveToFile();
+    }
+
+    public static void cherryPick(String[] args) throws IOException {
+        validateNumArgs(args, 2);
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        Metadata metadata = Metadata.readFromFile();
+        Stage stage = Stage.readFromFile();
+        if (!stage.fileMapAddition.isEmpty() || !stage.fileMapDeletion.isEmpty()) {
+            exitWithError("You have uncommitted changes.");
+        }
+        String commitID = resolveCommitID(args[1]);
+        Commit picked = Commit.readFromFile(commitID);
+        if (picked.parent1 == null) {
+            exitWithError("Cannot cherry-pick the initial commit.");
+        }
+
+        Commit currentCommit = Commit.readFromFile(metadata.head);
+        Map<String, String> base = Commit.readFromFile(picked.parent1).fileMap;
+        checkUntrackedBeforeMerge(base, currentCommit.fileMap, picked.fileMap);
+        Merger merger = new Merger(base, currentCommit.fileMap, picked.fileMap);
+        if (merger.result().equals(currentCommit.fileMap)) {
+            exitWithError("No changes added to the commit.");
+        }
+        Commit newCommit = new Commit(picked.message, metadata.head, null);
+        newCommit.fileMap = merger.result();
+        applyMerge(currentCommit, merger);
+        String newCommitID = saveNewCommit(newCommit, currentCommit);
+
+        metadata.head = newCommitID;
+        metadata.branchMap.put(metadata.currentBranch, newCommitID);
+        metadata.saveToFile();
+    }
+
+    public static void rebase(String[] args) throws IOException {
+        validateNumArgs(args, 2);
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        String branchName = args[1];
+        Metadata metadata = Metadata.readFromFile();
+        Stage stage = Stage.readFromFile();
+        if (!stage.fileMapAddition.isEmpty() || !stage.fileMapDeletion.isEmpty()) {
+            exitWithError("You have uncommitted changes.");
+        }
+        if (!metadata.branchMap.containsKey(branchName)) {
+            exitWithError("A branch with that name does not exist.");
+        }
+        if (branchName.equals(metadata.currentBranch)) {
+            exitWithError("Cannot rebase a branch onto itself.");
+        }
+        String branchCommitID = metadata.branchMap.get(branchName);
+        String splitCommitID = findSplitPoint(metadata.head, branchCommitID);
+        if (splitCommitID.equals(branchCommitID)) {
+            System.out.println("Current branch is up to date.");
+            return;
+        }
+
+        // The commits to replay: those reachable from HEAD but not from the
+        // branch, except merges, each after its parents
+        Set<String> upstream = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>(List.of(branchCommitID));
+        while (!queue.isEmpty()) {
+            String id = queue.remove();
+            if (upstream.add(id)) {
+                Commit commit = Commit.readFromFile(id);
+                if (commit.parent1 != null) {
+                    queue.add(commit.parent1);
+                }
+                if (commit.parent2 != null) {
+                    queue.add(commit.parent2);
+                }
+            }
+        }
+        List<Commit> replayed = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        ArrayDeque<String[]> stack = new ArrayDeque<>();
+        stack.push(new String[] { metadata.head, null });
+        while (!stack.isEmpty()) {
+            String[] top = stack.pop();
+            String id = top[0];
+            if (top[1] != null) {
+                Commit commit = Commit.readFromFile(id);
+                if (commit.parent2 == null) {
+                    replayed.add(commit);
                 }
+                continue;
+            }
+            if (upstream.contains(id) || !seen.add(id)) {
+                continue;
+            }
+            Commit commit = Commit.readFromFile(id);
+            stack.push(new String[] { id, "done" });
+            if (commit.parent2 != null) {
+                stack.push(new String[] { commit.parent2, null });
+            }
+            if (commit.parent1 != null) {
+                stack.push(new String[] { commit.parent1, null });
+            }
+        }
 
-                // Any files that were not present at the split point and are present
-                // only in the given branch should be checked out and staged.
-            } else if (!splitPointCommit.fileMap.containsKey(targetFileName)
-                    && !currentCommit.fileMap.containsKey(targetFileName)) {
-                mergeUntrackFileOverrideCheck(targetFileName, branchCommit.fileMap.get(targetFileName));
-                checkout(new String[]{"checkout", branchCommitID, "--", targetFileName});
-                autoStageForAddition(targetFileName, branchCommit.fileMap.get(targetFileName));
-
-                // Both changed, conflict
-            } else if (!splitPointCommit.fileMap.containsKey(targetFileName)
-                    && currentCommit.fileMap.containsKey(targetFileName)
-                    && !branchCommit.fileMap.get(targetFileName).
-                    equals(currentCommit.fileMap.get(targetFileName))) {
-                File blobCurFile = Utils.join(GITLET_BLOBS, currentCommit.fileMap.get(targetFileName));
-                File blobBranchFile = Utils.join(GITLET_BLOBS, branchCommit.fileMap.get(targetFileName));
-                conflictSolver(targetFileName,
-                        Utils.readContentsAsString(blobCurFile),
-                        Utils.readContentsAsString(blobBranchFile));
-                System.out.println("Encountered a merge conflict.");
+        // Replay them in memory, touching the working directory only at the end
+        Commit currentCommit = Commit.readFromFile(metadata.head);
+        String newHead = branchCommitID;
+        Commit newHeadCommit = Commit.readFromFile(newHead);
+        int conflicts = 0;
+        try (Trace.Span span = Trace.span("rebase.replay")) {
+            for (Commit commit : replayed) {
+                Merger merger = new Merger(Commit.readFromFile(commit.parent1).fileMap,
+                        newHeadCommit.fileMap, commit.fileMap);
+                if (merger.result().equals(newHeadCommit.fileMap)) {
+                    // Already upstream
+                    continue;
+                }
+                conflicts += merger.conflicts().size();
+                Commit newCommit = new Commit(commit.message, newHead, null);
+                newCommit.fileMap = merger.result();
+                newHead = saveNewCommit(newCommit, newHeadCommit);
+                newHeadCommit = newCommit;
+            }
+        }
+        checkoutCommitFiles(currentCommit, newHeadCommit);
+        for (int i = 0; i < conflicts; i += 1) {
+            System.out.println("Encountered a merge conflict.");
+        }
 
-                // One changed one deleted, conflict
-            } else if (splitPointCommit.fileMap.containsKey(targetFileName)
-                    && !currentCommit.fileMap.containsKey(targetFileName)
-                    && !branchCommit.fileMap.get(targetFileName).
-                    equals(splitPointCommit.fileMap.get(targetFileName))) {
-                File blobBranchFile = Utils.join(GITLET_BLOBS, branchCommit.fileMap.get(targetFileName));
-                conflictSolver(targetFileName,
-                        "",
-                        Utils.readContentsAsString(blobBranchFile));
+        metadata.head = newHead;
+        metadata.branchMap.put(metadata.currentBranch, newHead);
+        metadata.saveToFile();
+    }
+
+    /** Bring the working directory, whose files are those of CURRENTCOMMIT,
+     *  up to date with the result of MERGER, reporting any conflicts. */
+    public static void applyMerge(Commit currentCommit, Merger merger) {
+        Map<String, String> result = merger.result();
+        for (Map.Entry<String, String> entry : result.entrySet()) {
+            if (!currentCommit.fileMap.containsKey(entry.getKey())) {
+                mergeUntrackFileOverrideCheck(entry.getKey(), entry.getValue());
+            }
+        }
+        List<String> changed = changedFileNames(currentCommit.fileMap, result);
+        Promisor.prefetch(changed.stream().map(result::get).filter(Objects::nonNull).toList());
+        for (String fileName : changed) {
+            String contentSHA = result.get(fileName);
+            if (contentSHA == null) {
+                Utils.join(CWD, fileName).delete();
+            } else if (merger.conflicts().contains(fileName)) {
+                // Conflicts are shown even outside the sparse set
+                Links.write(Utils.join(CWD, fileName), Blob.read(contentSHA));
                 System.out.println("Encountered a merge conflict.");
+            } else {
+                checkoutBlob(fileName, contentSHA);
             }
         }
+    }
+
+    /** Save the new commit COMMIT, whose first parent is PARENT, and
+     *  return its id. */
+    public static String saveNewCommit(Commit commit, Commit parent) {
+        String commitID = commit.saveToFile();
+        new ChangedPaths(commit.parent1, changedFileNames(parent.fileMap, commit.fileMap))
+            .saveToFile(commitID);
+        return commitID;
+    }
+
+    public static void addRemote(String[] args) {
+        validateNumArgs(args, 3);
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        Remotes remotes = Remotes.readFromFile();
+        if (remotes.remoteMap.containsKey(args[1])) {
+            exitWithError("A remote with that name already exists.");
+        }
+        remotes.remoteMap.put(args[1], args[2].replace("/", File.separator));
+        remotes.saveToFile();
+    }
+
+    public static void removeRemote(String[] args) {
+        validateNumArgs(args, 2);
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        Remotes remotes = Remotes.readFromFile();
+        if (remotes.remoteMap.remove(args[1]) == null) {
+            exitWithError("A remote with that name does not exist.");
+        }
+        remotes.saveToFile();
+    }
+
+    public static void push(String[] args) throws IOException {
+        validateNumArgs(args, 3);
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        File remoteDir = remoteDirectory(args[1]);
+        String branchName = args[2];
+        Metadata metadata = Metadata.readFromFile();
+        File remoteMetaFile = Utils.join(remoteDir, "metadata");
+        Metadata remoteMetadata = Utils.readObject(remoteMetaFile, Metadata.class);
+        String remoteHead = remoteMetadata.branchMap.get(branchName);
+
+        Sync sync = new Sync(GITLET, remoteDir);
+        List<String> missing = sync.missingCommits(metadata.head);
+        if (remoteHead != null && !sync.isAncestor(remoteHead, metadata.head)) {
+            exitWithError("Please pull down remote changes before pushing.");
+        }
+        sync.send(missing);
+
+        remoteMetadata.branchMap.put(branchName, metadata.head);
+        if (branchName.equals(remoteMetadata.currentBranch)) {
+            remoteMetadata.head = metadata.head;
+        }
+        Utils.writeObject(remoteMetaFile, remoteMetadata);
+    }
+
+    public static void fetch(String[] args) throws IOException {
+        validateNumArgs(args, 3);
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        File remoteDir = remoteDirectory(args[1]);
+        Metadata remoteMetadata = Utils.readObject(Utils.join(remoteDir, "metadata"), Metadata.class);
+        String remoteHead = remoteMetadata.branchMap.get(args[2]);
+        if (remoteHead == null) {
+            exitWithError("That remote does not have that branch.");
+        }
+
+        Sync sync = new Sync(remoteDir, GITLET);
+        sync.send(sync.missingCommits(remoteHead));
+
+        Metadata metadata = Metadata.readFromFile();
+        metadata.branchMap.put(args[1] + "/" + args[2], remoteHead);
+        metadata.saveToFile();
+    }
+
+    public static void pull(String[] args) throws IOException {
+        validateNumArgs(args, 3);
+        fetch(args);
+        merge(new String[]{"merge", args[1] + "/" + args[2]});
+    }
 
-        for (String curCommitFileName : currentCommit.fileMap.keySet()) {
-            // Any files present at the split point, unmodified in the current branch,
-            // and absent in the given branch should be removed (and untracked).
-            if (splitPointCommit.fileMap.containsKey(curCommitFileName)) {
-                if (currentCommit.fileMap.get(curCommitFileName).
-                        equals(splitPointCommit.fileMap.get(curCommitFileName))
-                        && !branchCommit.fileMap.containsKey(curCommitFileName)) {
-                    autoStageForDeletion(curCommitFileName, currentCommit.fileMap.get(curCommitFileName));
-
-                    // One changed one deleted, conflict
-                } else if (!branchCommit.fileMap.containsKey(curCommitFileName)
-                        && !currentCommit.fileMap.get(curCommitFileName).
-                        equals(splitPointCommit.fileMap.get(curCommitFileName))) {
-                    File blobCurFile = Utils.join(GITLET_BLOBS, currentCommit.fileMap.get(curCommitFileName));
-                    conflictSolver(curCommitFileName,
-                            Utils.readContentsAsString(blobCurFile),
-                            "");
-                    System.out.println("Encountered a merge conflict.");
+    public static void cloneRepository(String[] args) throws IOException {
+        boolean blobless = args.length == 3 && args[1].equals("--blobless");
+        if (!blobless) {
+            validateNumArgs(args, 2);
+        }
+        if (isInited()) {
+            exitWithError("A Gitlet version-control system already exists in the current directory.");
+        }
+        File source = new File(args[args.length - 1].replace("/", File.separator));
+        if (Utils.join(source, ".gitlet").isDirectory()) {
+            source = Utils.join(source, ".gitlet");
+        }
+        if (!Utils.join(source, "metadata").isFile()) {
+            exitWithError("Remote directory not found.");
+        }
+
+        // Share the immutable objects; only the small mutable files are new
+        GITLET.mkdir();
+        File sourcePromisor = Utils.join(source, "promisor");
+        if (sourcePromisor.exists()) {
+            // A clone of a blobless clone takes the few blobs made there
+            // and relies on the same promisor for the rest
+            Clone.linkObjects(source, GITLET);
+            String remote = Utils.readObject(sourcePromisor, Promisor.class).remote;
+            new Promisor(remote).saveToFile();
+        } else if (blobless) {
+            Clone.linkObjects(source, GITLET, "blobs", "chunked", "chunks");
+            new Promisor(source.getAbsolutePath()).saveToFile();
+        } else {
+            Clone.linkObjects(source, GITLET);
+        }
+        Metadata metadata = Utils.readObject(Utils.join(source, "metadata"), Metadata.class);
+        metadata.saveToFile();
+        new Stage().saveToFile();
+        Remotes remotes = new Remotes();
+        remotes.remoteMap.put("origin", source.getPath());
+        remotes.saveToFile();
+
+        Commit empty = new Commit();
+        empty.fileMap = new HashMap<>();
+        checkoutCommitFiles(empty, Commit.readFromFile(metadata.head));
+    }
+
+    /** Return the .gitlet directory of remote NAME, exiting with an error
+     *  if it does not exist. */
+    public static File remoteDirectory(String name) {
+        File remoteDir = Remotes.readFromFile().directory(name);
+        if (remoteDir == null || !remoteDir.isDirectory()) {
+            exitWithError("Remote directory not found.");
+        }
+        return remoteDir;
+    }
+
+    public static void sparse(String[] args) throws IOException {
+        if (args.length < 2
+                || (args[1].equals("set") ? args.length < 3 : args.length != 2)) {
+            exitWithError("Incorrect operands.");
+        }
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        switch (args[1]) {
+            case "list":
+                if (Sparse.enabled()) {
+                    for (String pattern : Sparse.readFromFile().patterns) {
+                        System.out.println(pattern);
+                    }
                 }
+                return;
+            case "set":
+                Sparse sparse = new Sparse();
+                sparse.patterns.addAll(Arrays.asList(args).subList(2, args.length));
+                sparse.saveToFile();
+                break;
+            case "disable":
+                Sparse.disable();
+                break;
+            default:
+                exitWithError("Incorrect operands.");
+        }
+
+        // Bring the working directory in line with the new sparse set
+        Metadata metadata = Metadata.readFromFile();
+        Stage stage = Stage.readFromFile();
+        Commit head = Commit.readFromFile(metadata.head);
+        List<String> toWrite = new ArrayList<>();
+        for (Map.Entry<String, String> entry : head.fileMap.entrySet()) {
+            String fileName = entry.getKey();
+            if (stage.fileMapAddition.containsKey(fileName) || stage.fileMapDeletion.containsKey(fileName)) {
+                continue;
+            }
+            String cwdSHA = WorkingTree.hash(fileName);
+            if (Sparse.includes(fileName) && cwdSHA == null) {
+                toWrite.add(fileName);
+            } else if (!Sparse.includes(fileName) && entry.getValue().equals(cwdSHA)) {
+                // Only unmodified files are dropped
+                Utils.join(CWD, fileName).delete();
             }
         }
+        Promisor.prefetch(toWrite.stream().map(head.fileMap::get).toList());
+        for (String fileName : toWrite) {
+            checkoutBlob(fileName, head.fileMap.get(fileName));
+        }
+    }
 
-        // Create new commit
-        stage = Stage.readFromFile();
-        String commitMessage = "Merged " + branchName + " into " + metadata.currentBranch + ".";
-        Commit mergeCommit = new Commit(commitMessage, metadata.head, branchCommitID);
-        mergeCommit.setFileMap(currentCommit.fileMap, stage.fileMapAddition, stage.fileMapDeletion);
-        String mergeCommitID = Utils.sha1(Utils.serialize(mergeCommit));
-        mergeCommit.saveToFile(mergeCommitID);
+    public static void worktree(String[] args) throws IOException {
+        if (args.length < 2
+                || (args[1].equals("add") ? args.length != 4 : args.length != 2)) {
+            exitWithError("Incorrect operands.");
+        }
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
 
-        // Update current status and persist
-        stage.clearMap();
-        stage.saveToFile();
+        switch (args[1]) {
+            case "list":
+                for (Map.Entry<String, String> entry : Worktrees.branches().entrySet()) {
+                    System.out.println(entry.getKey() + " [" + entry.getValue() + "]");
+                }
+                break;
+            case "add":
+                File root = new File(args[2].replace("/", File.separator));
+                String branchName = args[3];
+                String[] existing = root.list();
+                if (existing != null && existing.length > 0) {
+                    exitWithError("That directory already exists.");
+                }
+                try (Worktrees.Lock lock = Worktrees.lock()) {
+                    Metadata metadata = Metadata.readFromFile();
+                    if (!metadata.branchMap.containsKey(branchName)) {
+                        exitWithError("No such branch exists.");
+                    }
+                    if (branchName.equals(metadata.currentBranch)
+                            || Worktrees.holder(branchName) != null) {
+                        exitWithError("That branch is checked out in another worktree.");
+                    }
+                    Worktrees.add(root, branchName, metadata);
+                }
+                break;
+            default:
+                exitWithError("Incorrect operands.");
+        }
+    }
 
-        metadata.head = mergeCommitID;
-        metadata.branchMap.put(metadata.currentBranch, mergeCommitID);
-        metadata.saveToFile();
+    public static void fsck(String[] args) {
+        boolean unreachable = args.length == 2 && args[1].equals("--unreachable");
+        if (!unreachable) {
+            validateNumArgs(args, 1);
+        }
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        for (String problem : new Fsck(unreachable).run()) {
+            System.out.println(problem);
+        }
     }
 
-    public static String findFullIDByAbbreviate(String abbreviate) {
-        List<String> commitFileNameList = Utils.plainFilenamesIn(GITLET_COMMITS);
-        for (String commitFileName : commitFileNameList) {
-            if (commitFileName.startsWith(abbreviate)) {
-                return commitFileName;
+    public static void maintenance(String[] args) {
+        validateNumArgs(args, 1);
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        Metadata metadata = Metadata.readFromFile();
+        Bitmaps bitmaps = Bitmaps.readFromFile();
+        bitmaps.update(new TreeSet<>(metadata.branchMap.values()));
+        bitmaps.saveToFile();
+    }
+
+    public static void count(String[] args) {
+        if (args.length > 2) {
+            exitWithError("Incorrect operands.");
+        }
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        String tip = args.length == 2 ? resolveCommitID(args[1]) : Metadata.readFromFile().head;
+        System.out.println(Bitmaps.countCommits(tip) + " commits");
+        System.out.println(Bitmaps.countBlobs(tip) + " blobs");
+    }
+
+    public static void fastImport(String[] args) throws IOException {
+        if (args.length > 2) {
+            exitWithError("Incorrect operands.");
+        }
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        if (args.length == 1) {
+            new FastImport(System.in).run();
+            return;
+        }
+        File stream = new File(args[1]);
+        if (!stream.isFile()) {
+            exitWithError("File does not exist.");
+        }
+        try (InputStream in = new FileInputStream(stream)) {
+            new FastImport(in).run();
+        }
+    }
+
+    public static void archive(String[] args) throws IOException {
+        String commitName = null;
+        String format = null;
+        String output = null;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].startsWith("--format=")) {
+                format = args[i].substring("--format=".length());
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                i += 1;
+                output = args[i];
+            } else if (commitName == null) {
+                commitName = args[i];
+            } else {
+                exitWithError("Incorrect operands.");
+            }
+        }
+        if (commitName == null) {
+            exitWithError("Incorrect operands.");
+        }
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+        if (format == null) {
+            format = output != null && output.endsWith(".zip") ? "zip" : "tar";
+        }
+        if (!format.equals("tar") && !format.equals("zip")) {
+            exitWithError("Unknown archive format.");
+        }
+
+        Commit commit = Commit.readFromFile(resolveCommitID(commitName));
+        Archive archive = new Archive(commit.fileMap, commit.timeStamp);
+        try (FileChannel out = output == null
+                 ? new FileOutputStream(FileDescriptor.out).getChannel()
+                 : FileChannel.open(new File(output).toPath(), StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                    StandardOpenOption.WRITE)) {
+            if (format.equals("zip")) {
+                archive.writeZip(out);
+            } else {
+                archive.writeTar(out);
             }
         }
-        return abbreviate;
     }
 
-    public static void autoStageForAddition(String fileName, String contentSHA) {
-        Stage stage = Stage.readFromFile();
-        stage.fileMapAddition.put(fileName, contentSHA);
-        stage.saveToFile();
+    public static void watch(String[] args) throws IOException {
+        if (args.length > 2 || (args.length == 2 && !args[1].equals("stop"))) {
+            exitWithError("Incorrect operands.");
+        }
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        if (args.length == 2) {
+            Watcher.stop();
+        } else {
+            Watcher.run();
+        }
+    }
+
+    public static void diff(String[] args) {
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        // Split "[commit [commit]] [-- paths]"
+        List<String> commitArgs = new ArrayList<>();
+        Set<String> paths = null;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--")) {
+                paths = new HashSet<>(Arrays.asList(args).subList(i + 1, args.length));
+                break;
+            }
+            commitArgs.add(args[i]);
+        }
+        if (commitArgs.size() > 2) {
+            exitWithError("Incorrect operands.");
+        }
+
+        Metadata metadata = Metadata.readFromFile();
+        String leftID = commitArgs.isEmpty() ? metadata.head : resolveCommitID(commitArgs.get(0));
+        Map<String, String> left = Commit.readFromFile(leftID).fileMap;
+        Map<String, String> right;
+        if (commitArgs.size() == 2) {
+            right = Commit.readFromFile(resolveCommitID(commitArgs.get(1))).fileMap;
+        } else {
+            // The working tree, as far as tracked and staged files go
+            Stage stage = Stage.readFromFile();
+            Set<String> names = new HashSet<>(left.keySet());
+            names.addAll(stage.fileMapAddition.keySet());
+            right = new HashMap<>();
+            for (String name : names) {
+                if (paths == null || paths.contains(name)) {
+                    String contentSHA = WorkingTree.hash(name);
+                    if (contentSHA != null) {
+                        right.put(name, contentSHA);
+                    }
+                }
+            }
+        }
+
+        if (paths != null) {
+            left = new HashMap<>(left);
+            left.keySet().retainAll(paths);
+            right = new HashMap<>(right);
+            right.keySet().retainAll(paths);
+        }
+        Map<String, String> leftFiles = left, rightFiles = right;
+
+        boolean fromWorkingTree = commitArgs.size() < 2;
+        Function<String, byte[]> rightContents = fromWorkingTree
+                ? name -> Utils.readContents(Utils.join(CWD, name))
+                : name -> Blob.read(rightFiles.get(name));
+        List<String> changed = changedFileNames(leftFiles, rightFiles);
+        Map<String, String> renames = Renames.detect(leftFiles, rightFiles, rightContents);
+        Map<String, String> renamedFrom = new HashMap<>();
+        for (Map.Entry<String, String> rename : renames.entrySet()) {
+            renamedFrom.put(rename.getValue(), rename.getKey());
+        }
+        changed.removeAll(renames.keySet());
+
+        // Diff files in parallel, up to DIFF_WINDOW at once, but print them
+        // in order, each as soon as it and those before it are finished
+        ArrayDeque<CompletableFuture<String>> window = new ArrayDeque<>();
+        Iterator<String> names = changed.iterator();
+        while (names.hasNext() || !window.isEmpty()) {
+            while (names.hasNext() && window.size() < DIFF_WINDOW) {
+                String name = names.next();
+                window.add(CompletableFuture.supplyAsync(() -> {
+                    String oldName = renamedFrom.getOrDefault(name, name);
+                    byte[] contents1 = leftFiles.containsKey(oldName) ? Blob.read(leftFiles.get(oldName)) : null;
+                    byte[] contents2 = rightFiles.containsKey(name) ? rightContents.apply(name) : null;
+                    return UnifiedDiff.format(oldName, name, contents1, contents2);
+                }));
+            }
+            System.out.print(window.remove().join());
+            System.out.flush();
+        }
     }
 
-    public static void autoStageForDeletion(String fileName, String contentSHA) {
-        File cwdFile = Utils.join(CWD, fileName);
-        if (cwdFile.exists()) {
-            cwdFile.delete();
+    public static void blame(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            exitWithError("Incorrect operands.");
         }
-        Stage stage = Stage.readFromFile();
-        stage.fileMapDeletion.put(fileName, contentSHA);
-        stage.saveToFile();
+        if (!isInited()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+
+        String commitID = args.length == 3 ? resolveCommitID(args[1]) : Metadata.readFromFile().head;
+        String fileName = args[args.length - 1];
+        Commit commit = Commit.readFromFile(commitID);
+        if (!commit.fileMap.containsKey(fileName)) {
+            exitWithError("File does not exist in that commit.");
+        }
+
+        List<String> origins = Blame.origins(fileName, commitID);
+        List<String> lines = UnifiedDiff.splitLines(Blob.read(commit.fileMap.get(fileName)));
+        Map<String, String> dates = new HashMap<>();
+        int width = Integer.toString(lines.size()).length();
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < lines.size(); i += 1) {
+            String origin = origins.get(i);
+            String date = dates.computeIfAbsent(origin,
+                    id -> Commit.readFromFile(id).getTimeStampAsString());
+            String line = lines.get(i);
+            out.append(origin, 0, 7).append(" (").append(date).append(" ")
+                    .append(String.format("%" + width + "d", i + 1)).append(") ")
+                    .append(line.endsWith("\n") ? line : line + "\n");
+        }
+        System.out.print(out);
+    }
+
+    /** Return the sorted names of the files whose blobs differ between
+     *  LEFT and RIGHT.  Files with the same blob on both sides are skipped
+     *  without being read. */
+    public static List<String> changedFileNames(Map<String, String> left, Map<String, String> right) {
+        List<String> resultList = new ArrayList<>();
+        for (Map.Entry<String, String> entry : left.entrySet()) {
+            if (!entry.getValue().equals(right.get(entry.getKey()))) {
+                resultList.add(entry.getKey());
+            }
+        }
+        for (String name : right.keySet()) {
+            if (!left.containsKey(name)) {
+                resultList.add(name);
+            }
+        }
+        Trace.count("diff.files", resultList.size());
+        Collections.sort(resultList);
+        return resultList;
+    }
+
+    /** Save the ChangedPaths filter of the new commit COMMITID, whose first
+     *  parent is PARENTID and whose changes are those in STAGE. */
+    public static void saveChangedPaths(String commitID, String parentID, Stage stage) {
+        Set<String> changed = new HashSet<>(stage.fileMapAddition.keySet());
+        changed.addAll(stage.fileMapDeletion.keySet());
+        new ChangedPaths(parentID, changed).saveToFile(commitID);
+    }
+
+    /** Return the full ID of the commit named by NAME, which is either a
+     *  branch name or a (possibly abbreviated) commit ID. */
+    public static String resolveCommitID(String name) {
+        Metadata metadata = Metadata.readFromFile();
+        String commitID = metadata.branchMap.get(name);
+        if (commitID == null) {
+            commitID = name.length() < 40 ? findFullIDByAbbreviate(name) : name;
+        }
+        if (!isCommitExist(commitID)) {
+            exitWithError("No commit with that id exists.");
+        }
+        return commitID;
     }
 
-    public static void conflictSolver(String fileName, String contentFromHead, String contentFromBranch) throws IOException {
-        File cwdFile = Utils.join(CWD, fileName);
-        if (!cwdFile.exists()) {
-            cwdFile.createNewFile();
+    public static String findFullIDByAbbreviate(String abbreviate) {
+        List<String> commitFileNameList = ObjectStore.local().list("commits");
+        for (String commitFileName : commitFileNameList) {
+            if (commitFileName.startsWith(abbreviate)) {
+                return commitFileName;
+            }
         }
-        String resultContent = "<<<<<<< HEAD\n" +
-                contentFromHead + "=======\n" + contentFromBranch + ">>>>>>>\n";
-        Utils.writeContents(cwdFile, resultContent.getBytes());
+        return abbreviate;
+    }
 
-        String contentSHA = Utils.sha1(resultContent.getBytes());
-        autoStageForAddition(fileName, contentSHA);
+    /** Exit with an error if merging BRANCH into CURRENT, file maps whose
+     *  split point has the file map SPLIT, would overwrite an untracked
+     *  file.  Checked before the merge fetches any blobs; applyMerge checks
+     *  the result again. */
+    public static void checkUntrackedBeforeMerge(Map<String, String> split,
+                                                 Map<String, String> current,
+                                                 Map<String, String> branch) {
+        for (Map.Entry<String, String> entry : branch.entrySet()) {
+            String fileName = entry.getKey();
+            String splitSHA = split.get(fileName);
+            if (current.containsKey(fileName) || entry.getValue().equals(splitSHA)) {
+                continue;
+            }
+            // Deleted here but changed there conflicts, so nothing matches
+            mergeUntrackFileOverrideCheck(fileName, splitSHA == null ? entry.getValue() : "");
+        }
     }
 
     public static void mergeUntrackFileOverrideCheck(String fileName, String contentSHA) {
-        File cwdFile = Utils.join(CWD, fileName);
-        if (cwdFile.exists()) {
-            String cwdSHA = Utils.sha1(Utils.readContents(cwdFile));
+        String cwdSHA = WorkingTree.hash(fileName);
+        if (cwdSHA != null) {
             if (!cwdSHA.equals(contentSHA)) {
                 exitWithError("There is an untracked file in the way; delete it, or add and commit it first.");
             }
@@ -594,13 +1379,15 @@ public class Main {
 
         // Iterate over tracked files
         for (String trackedFile : commit.fileMap.keySet()) {
-            File cwdFile = Utils.join(CWD, trackedFile);
-            if (!cwdFile.exists()
+            if (!Sparse.includes(trackedFile)) {
+                continue;
+            }
+            String contentSHA = WorkingTree.hash(trackedFile);
+            if (contentSHA == null
                     && !stage.fileMapDeletion.containsKey(trackedFile)) {
                 resultList.add(trackedFile + " (deleted)");
             }
-            if (cwdFile.exists()) {
-                String contentSHA = Utils.sha1(Utils.readContents(cwdFile));
+            if (contentSHA != null) {
                 if (!contentSHA.equals(commit.fileMap.get(trackedFile))
                         && !stage.fileMapAddition.containsKey(trackedFile)) {
                     resultList.add(trackedFile + " (modified)");
@@ -610,11 +1397,10 @@ public class Main {
 
         // Iterate over staged for addition
         for (String addedFile : stage.fileMapAddition.keySet()) {
-            File cwdFile = Utils.join(CWD, addedFile);
-            if (!cwdFile.exists()) {
+            String contentSHA = WorkingTree.hash(addedFile);
+            if (contentSHA == null) {
                 resultList.add(addedFile + " (deleted)");
             } else {
-                String contentSHA = Utils.sha1(Utils.readContents(cwdFile));
                 if (!contentSHA.equals(stage.fileMapAddition.get(addedFile))) {
                     resultList.add(addedFile + " (modified)");
                 }
@@ -627,7 +1413,7 @@ public class Main {
 
     public static List<String> getUntrackedFiles(Stage stage, Commit commit) {
         List<String> resultList = new ArrayList<>();
-        List<String> cwdFiles = Utils.plainFilenamesIn(CWD);
+        List<String> cwdFiles = WorkingTree.fileNames();
         for (String cwdFile : cwdFiles) {
             if (!stage.fileMapAddition.containsKey(cwdFile) && !commit.fileMap.containsKey(cwdFile)) {
                 resultList.add(cwdFile);
@@ -653,17 +1439,28 @@ public class Main {
         }
 
         // Restore file back to CWD
-        File blobFile = Utils.join(GITLET_BLOBS, curCommit.fileMap.get(fileName));
-        File cwdFile = Utils.join(CWD, fileName);
-        if (!cwdFile.exists()) {
-            cwdFile.createNewFile();
+        Links.write(Utils.join(CWD, fileName), Blob.read(curCommit.fileMap.get(fileName)));
+    }
+
+    /** Write the contents of blob CONTENTSHA to working file FILENAME,
+     *  unless it is outside the sparse set. */
+    public static void checkoutBlob(String fileName, String contentSHA) {
+        if (Sparse.includes(fileName)) {
+            Links.write(Utils.join(CWD, fileName), Blob.read(contentSHA));
         }
-        Utils.writeContents(cwdFile, Utils.readContents(blobFile));
     }
 
     public static void checkoutCommitFiles(Commit curCommit, Commit targetCommit) throws IOException {
+        checkoutCommitFiles(curCommit, targetCommit, false);
+    }
+
+    /** Replace the files of CURCOMMIT in the working directory by those of
+     *  TARGETCOMMIT, as hard links to their blobs where possible if LINK. */
+    public static void checkoutCommitFiles(Commit curCommit, Commit targetCommit, boolean link)
+            throws IOException {
         // Checking
-        List<String> cwdFiles = Utils.plainFilenamesIn(CWD);
+        Trace.Span checkSpan = Trace.span("checkout.untrackedCheck");
+        List<String> cwdFiles = WorkingTree.fileNames();
         for (String cwdFile : cwdFiles) {
             // Not tracked by the current commit
             if (!curCommit.fileMap.containsKey(cwdFile)) {
@@ -672,36 +1469,51 @@ public class Main {
 //                    exitWithError("There is an untracked file in the way; delete it, or add and commit it first.");
 //                }
                 // In the target commit but the content is different
-                String contentSHA = Utils.sha1(Utils.readContents(Utils.join(CWD, cwdFile)));
-                if (targetCommit.fileMap.containsKey(cwdFile)
-                        && !contentSHA.equals(targetCommit.fileMap.get(cwdFile))) {
+                if (targetCommit.fileMap.containsKey(cwdFile) && Sparse.includes(cwdFile)
+                        && !WorkingTree.hash(cwdFile).equals(targetCommit.fileMap.get(cwdFile))) {
                     exitWithError("There is an untracked file in the way; delete it, or add and commit it first.");
                 }
             }
         }
 
+        checkSpan.close();
+
         // Do the actual checkout work
-        // 1. take all files in the target commit to CWD
-        for(String targetFile : targetCommit.fileMap.keySet()) {
-            File cwdFile = Utils.join(CWD, targetFile);
-            if (!cwdFile.exists()) {
-                cwdFile.createNewFile();
+        // 1. take all files in the target commit (in the sparse set) to CWD
+        List<String> targetFiles = new ArrayList<>();
+        for (String targetFile : targetCommit.fileMap.keySet()) {
+            if (Sparse.includes(targetFile)) {
+                targetFiles.add(targetFile);
+            }
+        }
+        Promisor.prefetch(targetFiles.stream().map(targetCommit.fileMap::get).toList());
+        try (Trace.Span span = Trace.span("checkout.write")) {
+            for (String targetFile : targetFiles) {
+                Links.checkout(Utils.join(CWD, targetFile), targetCommit.fileMap.get(targetFile), link);
             }
-            Utils.writeContents(cwdFile,
-                    Utils.readContents(Utils.join(GITLET_BLOBS,
-                            targetCommit.fileMap.get(targetFile))));
         }
 
         // 2. Remove files tracked in the current commit but not in the target commit
-        for(String curFile : curCommit.fileMap.keySet()) {
-            File cwdFile = Utils.join(CWD, curFile);
-            if (cwdFile.exists() && !targetCommit.fileMap.containsKey(curFile)) {
-                cwdFile.delete();
+        try (Trace.Span span = Trace.span("checkout.remove")) {
+            for (String curFile : curCommit.fileMap.keySet()) {
+                if (!Sparse.includes(curFile)) {
+                    continue;
+                }
+                File cwdFile = Utils.join(CWD, curFile);
+                if (cwdFile.exists() && !targetCommit.fileMap.containsKey(curFile)) {
+                    cwdFile.delete();
+                }
             }
         }
     }
 
     public static String findSplitPoint(String commitID1, String commitID2) {
+        try (Trace.Span span = Trace.span("findSplitPoint")) {
+            return findSplitPointUntraced(commitID1, commitID2);
+        }
+    }
+
+    private static String findSplitPointUntraced(String commitID1, String commitID2) {
         HashSet<String> commitSet = new HashSet<>();
         while (commitID1 != null) {
             commitSet.add(commitID1);
@@ -723,8 +1535,7 @@ public class Main {
     }
 
     public static boolean isCommitExist(String commitID) {
-        File commitFile = Utils.join(GITLET_COMMITS, commitID);
-        return commitFile.exists();
+        return ObjectStore.local().contains("commits", commitID);
     }
 
     public static boolean isInited() {
@@ -740,9 +1551,14 @@ public class Main {
      * @param message message to print
      */
     public static void exitWithError(String message) {
+        if (Batch.running()) {
+            throw new GitletException(message);
+        }
         if (message != null && !message.equals("")) {
             System.out.println(message);
         }
+        finish();
+        Trace.report();
         System.exit(0);
     }
 
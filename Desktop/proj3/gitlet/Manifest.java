@@ -0,0 +1,377 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** The files of a commit: an immutable map from file names to blob IDs,
+ *  stored as an object of kind "manifests" named by the SHA-1 of its
+ *  contents, apart from the commit itself so that commands reading only
+ *  history (log, find, split points) never load it.  Commits with the
+ *  same files share one manifest.
+ *
+ *  The representation is the same in memory as on disk.  Names are sorted
+ *  by their UTF-8 bytes and front-coded: each is stored as the length of
+ *  the prefix it shares with the one before, and the rest.  Every
+ *  RESTART_INTERVALth name is stored whole, so that get is a binary search
+ *  of those followed by a short scan.  IDs are kept as 20 binary bytes.
+ *  An entry thus takes some 25 to 30 bytes rather than the 150 or more of
+ *  a HashMap entry with two Strings.
+ *  @author
+ */
+public class Manifest extends AbstractMap<String, String> implements Dumpable {
+
+    /** Names stored whole, one in this many. */
+    static final int RESTART_INTERVAL = 16;
+
+    /** The length of an ID in bytes. */
+    static final int ID_LENGTH = 20;
+
+    /** The number of files. */
+    public int size;
+
+    /** The front-coded names: for each, a varint prefix length, a varint
+     *  suffix length and the suffix. */
+    public byte[] names;
+
+    /** Offsets in names of every RESTART_INTERVALth name. */
+    public int[] restarts;
+
+    /** The blob IDs, ID_LENGTH bytes each, in the order of the names. */
+    public byte[] ids;
+
+    public Manifest() {};
+
+    /** A manifest of FILES. */
+    public Manifest(Map<String, String> files) {
+        List<Map.Entry<byte[], String>> sorted = new ArrayList<>(files.size());
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            sorted.add(new SimpleImmutableEntry<>(
+                entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue()));
+        }
+        sorted.sort((e1, e2) -> Arrays.compareUnsigned(e1.getKey(), e2.getKey()));
+
+        size = sorted.size();
+        restarts = new int[(size + RESTART_INTERVAL - 1) / RESTART_INTERVAL];
+        ids = new byte[size * ID_LENGTH];
+        Encoder out = new Encoder();
+        byte[] previous = new byte[0];
+        for (int i = 0; i < size; i += 1) {
+            byte[] name = sorted.get(i).getKey();
+            int shared = 0;
+            if (i % RESTART_INTERVAL == 0) {
+                restarts[i / RESTART_INTERVAL] = out.size;
+            } else {
+                shared = Arrays.mismatch(previous, name);
+                shared = shared < 0 ? name.length : Math.min(shared, name.length);
+            }
+            out.varint(shared);
+            out.varint(name.length - shared);
+            out.bytes(name, shared, name.length - shared);
+            String id = sorted.get(i).getValue();
+            if (id.length() != 2 * ID_LENGTH) {
+                throw new IllegalArgumentException("bad blob id " + id);
+            }
+            System.arraycopy(HEX.parseHex(id), 0, ids, i * ID_LENGTH, ID_LENGTH);
+            previous = name;
+        }
+        names = Arrays.copyOf(out.buffer, out.size);
+    }
+
+    /** Store a manifest of FILES in this repository, and return its ID. */
+    public static String save(Map<String, String> files) {
+        try (Trace.Span span = Trace.span("manifest.write")) {
+            Manifest manifest = files instanceof Manifest m ? m : new Manifest(files);
+            byte[] contents = Utils.serialize(manifest);
+            String id = Utils.sha1(contents);
+            ObjectStore.local().write("manifests", id, contents);
+            return id;
+        }
+    }
+
+    /** Return manifest ID of STORE. */
+    public static Manifest read(ObjectStore store, String id) {
+        try (Trace.Span span = Trace.span("manifest.read")) {
+            Trace.count("manifests.read");
+            byte[] contents = store.read("manifests", id);
+            if (contents == null) {
+                throw new IllegalArgumentException("no manifest " + id);
+            }
+            return Utils.deserialize(contents, Manifest.class);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : id(index);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return new AbstractSet<>() {
+            @Override
+            public boolean contains(Object key) {
+                return containsKey(key);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                Iterator<Map.Entry<String, String>> entries = entrySet().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return entries.next().getKey();
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return _index < size;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        _offset = _cursor.next(_offset);
+                        String name = _cursor.name();
+                        _index += 1;
+                        return new SimpleImmutableEntry<>(name, id(_index - 1));
+                    }
+
+                    /** The index of the next entry. */
+                    private int _index;
+                    /** The offset in names of the next entry. */
+                    private int _offset;
+                    /** The name decoded last. */
+                    private final Cursor _cursor = new Cursor();
+                };
+            }
+        };
+    }
+
+    /** Return the files whose IDs differ between this manifest and OTHER,
+     *  as a map from their names to their IDs in OTHER, or to null for
+     *  those OTHER lacks.  The two are walked together in order, and only
+     *  the names of the files returned are made into Strings. */
+    Map<String, String> changesTo(Manifest other) {
+        Map<String, String> result = new TreeMap<>();
+        if (Arrays.equals(ids, other.ids) && Arrays.equals(names, other.names)) {
+            return result;
+        }
+        Cursor mine = new Cursor();
+        Cursor theirs = other.new Cursor();
+        int i = 0, j = 0, offset = 0, otherOffset = 0;
+        if (size > 0) {
+            offset = mine.next(offset);
+        }
+        if (other.size > 0) {
+            otherOffset = theirs.next(otherOffset);
+        }
+        while (i < size || j < other.size) {
+            int c = i == size ? 1 : j == other.size ? -1 : mine.compareTo(theirs);
+            if (c == 0 && !Arrays.equals(ids, i * ID_LENGTH, (i + 1) * ID_LENGTH,
+                                         other.ids, j * ID_LENGTH, (j + 1) * ID_LENGTH)) {
+                result.put(mine.name(), other.id(j));
+            } else if (c < 0) {
+                result.put(mine.name(), null);
+            } else if (c > 0) {
+                result.put(theirs.name(), other.id(j));
+            }
+            if (c <= 0 && ++i < size) {
+                offset = mine.next(offset);
+            }
+            if (c >= 0 && ++j < other.size) {
+                otherOffset = theirs.next(otherOffset);
+            }
+        }
+        return result;
+    }
+
+    /** Return the index of file KEY, or -1 if there is none. */
+    private int indexOf(Object key) {
+        if (!(key instanceof String) || size == 0) {
+            return -1;
+        }
+        byte[] target = ((String) key).getBytes(StandardCharsets.UTF_8);
+        Cursor cursor = new Cursor();
+
+        // The last restart whose name is at most the target
+        int lo = 0;
+        int hi = restarts.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            cursor.next(restarts[mid]);
+            if (cursor.compareTo(target) <= 0) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        int offset = restarts[lo];
+        int end = Math.min(size, (lo + 1) * RESTART_INTERVAL);
+        for (int i = lo * RESTART_INTERVAL; i < end; i += 1) {
+            offset = cursor.next(offset);
+            int c = cursor.compareTo(target);
+            if (c == 0) {
+                return i;
+            } else if (c > 0) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the ID of file number INDEX, in hex. */
+    private String id(int index) {
+        return HEX.formatHex(ids, index * ID_LENGTH, (index + 1) * ID_LENGTH);
+    }
+
+    /** A decoder of successive names, each of which may share a prefix
+     *  with the one before. */
+    private class Cursor {
+        /** Decode the name at OFFSET in names, which must follow the name
+         *  last decoded unless it is stored whole, and return the offset
+         *  of the next. */
+        int next(int offset) {
+            int[] pos = { offset };
+            int shared = varint(pos);
+            int suffix = varint(pos);
+            if (shared + suffix > _name.length) {
+                _name = Arrays.copyOf(_name, Math.max(2 * _name.length, shared + suffix));
+            }
+            System.arraycopy(names, pos[0], _name, shared, suffix);
+            _length = shared + suffix;
+            return pos[0] + suffix;
+        }
+
+        /** Return the name decoded last. */
+        String name() {
+            return new String(_name, 0, _length, StandardCharsets.UTF_8);
+        }
+
+        /** Compare the name decoded last with TARGET, as unsigned bytes. */
+        int compareTo(byte[] target) {
+            return Arrays.compareUnsigned(_name, 0, _length, target, 0, target.length);
+        }
+
+        /** Compare the names decoded last by this and OTHER, as unsigned
+         *  bytes. */
+        int compareTo(Cursor other) {
+            return Arrays.compareUnsigned(_name, 0, _length, other._name, 0, other._length);
+        }
+
+        /** Return the varint at POS[0] in names, and advance POS[0]. */
+        private int varint(int[] pos) {
+            int result = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = names[pos[0]];
+                pos[0] += 1;
+                result |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+        }
+
+        /** The bytes of the name decoded last. */
+        private byte[] _name = new byte[64];
+        /** The length of the name decoded last. */
+        private int _length;
+    }
+
+    /** A growing buffer for encoding names. */
+    private static class Encoder {
+        /** Append N as a varint. */
+        void varint(int n) {
+            while (n >= 0x80) {
+                write((byte) (n | 0x80));
+                n >>>= 7;
+            }
+            write((byte) n);
+        }
+
+        /** Append LENGTH bytes of DATA from START. */
+        void bytes(byte[] data, int start, int length) {
+            ensure(length);
+            System.arraycopy(data, start, buffer, size, length);
+            size += length;
+        }
+
+        /** Append B. */
+        private void write(byte b) {
+            ensure(1);
+            buffer[size] = b;
+            size += 1;
+        }
+
+        /** Make room for N more bytes. */
+        private void ensure(int n) {
+            if (size + n > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, size + n));
+            }
+        }
+
+        /** The bytes encoded, in the first size of buffer. */
+        byte[] buffer = new byte[256];
+        /** The number of bytes encoded. */
+        int size;
+    }
+
+    /** Hex digits of IDs. */
+    private static final HexFormat HEX = HexFormat.of();
+
+    @Override
+    public void dump() {
+        System.out.println("Files: " + size);
+        for (Map.Entry<String, String> entry : entrySet()) {
+            System.out.println(entry.getKey() + " " + entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Manifest.
+ *  @author
+ */
+public class ManifestTest {
+
+    /** Return a blob ID made from N. */
+    private static String id(int n) {
+        return Utils.sha1("blob " + n);
+    }
+
+    /** Return a map of N files whose names share long prefixes, so that
+     *  they span several restart blocks. */
+    private static Map<String, String> files(int n) {
+        Map<String, String> result = new HashMap<>();
+        for (int i = 0; i < n; i += 1) {
+            result.put(String.format("dir%d/file%04d.txt", i % 3, i), id(i));
+        }
+        return result;
+    }
+
+    @Test
+    public void emptyManifest() {
+        Manifest manifest = new Manifest(new HashMap<>());
+        assertEquals(0, manifest.size());
+        assertTrue(manifest.isEmpty());
+        assertNull(manifest.get("a"));
+        assertFalse(manifest.containsKey("a"));
+        assertFalse(manifest.entrySet().iterator().hasNext());
+        assertEquals(new HashMap<String, String>(), manifest);
+    }
+
+    @Test
+    public void getAcrossRestartBlocks() {
+        int n = 10 * Manifest.RESTART_INTERVAL + 5;
+        Map<String, String> files = files(n);
+        Manifest manifest = new Manifest(files);
+        assertEquals(n, manifest.size());
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            assertTrue(manifest.containsKey(entry.getKey()));
+            assertEquals(entry.getValue(), manifest.get(entry.getKey()));
+        }
+        for (String absent : List.of("", "a", "dir0", "dir0/", "dir0/file0000.tx",
+                                      "dir0/file0000.txt0", "dir1/file0000.txt",
+                                      "dir2/file0170.txt", "zzz")) {
+            assertFalse(absent, manifest.containsKey(absent));
+            assertNull(manifest.get(absent));
+        }
+        assertFalse(manifest.containsKey(17));
+        assertNull(manifest.get(null));
+    }
+
+    @Test
+    public void iterationInByteOrder() {
+        // UTF-8 orders these Z, e, z, e-acute, then the CJK name
+        List<String> names = List.of("\u4e2d\u6587.txt", "z", "\u00e9t\u00e9", "Z", "e");
+        Map<String, String> files = new HashMap<>();
+        for (int i = 0; i < names.size(); i += 1) {
+            files.put(names.get(i), id(i));
+        }
+        Manifest manifest = new Manifest(files);
+        List<String> order = new ArrayList<>();
+        for (Map.Entry<String, String> entry : manifest.entrySet()) {
+            order.add(entry.getKey());
+            assertEquals(files.get(entry.getKey()), entry.getValue());
+        }
+        assertEquals(List.of("Z", "e", "z", "\u00e9t\u00e9", "\u4e2d\u6587.txt"), order);
+        assertEquals(new ArrayList<>(order), new ArrayList<>(manifest.keySet()));
+        for (String name : names) {
+            assertEquals(files.get(name), manifest.get(name));
+        }
+    }
+
+    @Test
+    public void nonAsciiPrefixesAcrossRestarts() {
+        Map<String, String> files = new HashMap<>();
+        for (int i = 0; i < 4 * Manifest.RESTART_INTERVAL; i += 1) {
+            files.put("\u00e9\u00e8/\u00fc" + "x".repeat(i % 5) + "\u4e2d" + i, id(i));
+        }
+        String longName = "\u00e9".repeat(200) + "/end";
+        files.put(longName, id(-1));
+        Manifest manifest = new Manifest(files);
+        assertEquals(files, manifest);
+        assertEquals(id(-1), manifest.get(longName));
+        assertNull(manifest.get("\u00e9".repeat(200)));
+        Map<String, String> iterated = new TreeMap<>();
+        for (Map.Entry<String, String> entry : manifest.entrySet()) {
+            iterated.put(entry.getKey(), entry.getValue());
+        }
+        assertEquals(files, iterated);
+    }
+
+    @Test
+    public void equalsAndHashCode() {
+        Map<String, String> files = files(40);
+        Manifest manifest = new Manifest(files);
+        assertEquals(files, manifest);
+        assertEquals(manifest, files);
+        assertEquals(files.hashCode(), manifest.hashCode());
+        assertEquals(manifest, new Manifest(files));
+
+        Map<String, String> changed = new HashMap<>(files);
+        changed.put("dir0/file0000.txt", id(1000));
+        assertNotEquals(manifest, new Manifest(changed));
+        changed = new HashMap<>(files);
+        changed.remove("dir1/file0001.txt");
+        assertNotEquals(manifest, new Manifest(changed));
+    }
+
+    @Test
+    public void serializedRoundTrip() {
+        Manifest manifest = new Manifest(files(50));
+        Manifest copy = Utils.deserialize(Utils.serialize(manifest), Manifest.class);
+        assertEquals(manifest, copy);
+        assertEquals(id(33), copy.get("dir0/file0033.txt"));
+    }
+
+    @Test
+    public void changesTo() {
+        Map<String, String> before = files(50);
+        Map<String, String> after = new HashMap<>(before);
+        after.remove("dir0/file0000.txt");
+        after.remove("dir1/file0049.txt");
+        after.put("dir2/file0020.txt", id(1000));
+        after.put("a.txt", id(1001));
+        after.put("\u00e9.txt", id(1002));
+        Map<String, String> expected = new HashMap<>();
+        expected.put("dir0/file0000.txt", null);
+        expected.put("dir1/file0049.txt", null);
+        expected.put("dir2/file0020.txt", id(1000));
+        expected.put("a.txt", id(1001));
+        expected.put("\u00e9.txt", id(1002));
+        assertEquals(expected, new Manifest(before).changesTo(new Manifest(after)));
+        assertTrue(new Manifest(before).changesTo(new Manifest(before)).isEmpty());
+        assertEquals(before.size(),
+                     new Manifest(new HashMap<>()).changesTo(new Manifest(before)).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badId() {
+        new Manifest(Map.of("a", "abc"));
+    }
+
+}
@@ -0,0 +1,340 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A three-way merge of file maps.  The result is computed from the file
+ *  maps of the split point and of the two sides alone, reading blobs only
+ *  to detect renames and to build conflicted files (which are stored as
+ *  new blobs), so a caller can merge many times (as rebase does) and
+ *  bring the working directory up to date once at the end.
+ *
+ *  The file maps are not copied.  Only the files changed since the split
+ *  point on either side are looked at, found by walking the manifests
+ *  together, and the result is the current file map with those changes
+ *  laid over it.  A result merged again (as in rebase) has its changes
+ *  folded into the next, so each merge costs the files changed, not the
+ *  size of the tree.
+ *  @author
+ */
+class Merger {
+
+    /** Merge CURRENT and BRANCH, the file maps of two commits whose latest
+     *  common ancestor has the file map SPLIT.  None of them is
+     *  modified. */
+    Merger(Map<String, String> split, Map<String, String> current, Map<String, String> branch) {
+        _split = new Side(split);
+        _current = new Side(current);
+        _branch = new Side(branch);
+        Map<String, String> ours = changes(split, current);
+        Map<String, String> theirs = changes(split, branch);
+        prefetchBlobs(ours, theirs);
+        alignRenames(ours, theirs);
+        _changes = new HashMap<>(_current.moved);
+
+        Set<String> names = new HashSet<>(ours.keySet());
+        names.addAll(theirs.keySet());
+        for (String name : names) {
+            mergeFile(name, _split.get(name), _current.get(name), _branch.get(name));
+        }
+        _result = Overlay.of(current, _changes);
+    }
+
+    /** Return the merged file map. */
+    Map<String, String> result() {
+        return _result;
+    }
+
+    /** Return the names of the files of result() that are conflicted, in
+     *  order. */
+    Set<String> conflicts() {
+        return _conflicts;
+    }
+
+    /** Merge the versions of file NAME with blobs SPLIT, CURRENT and
+     *  BRANCH (each null if absent) into _changes. */
+    private void mergeFile(String name, String split, String current, String branch) {
+        if (equal(current, branch) || equal(split, branch)) {
+            // Unchanged on the given branch, or changed alike on both
+            return;
+        }
+        if (equal(split, current)) {
+            // Changed on the given branch only
+            _changes.put(name, branch);
+            return;
+        }
+        // Changed differently on both
+        String contents = "<<<<<<< HEAD\n" + text(current) + "=======\n" + text(branch) + ">>>>>>>\n";
+        byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+        String id = Utils.sha1(bytes);
+        Blob.write(id, bytes);
+        _changes.put(name, id);
+        _conflicts.add(name);
+    }
+
+    /** Fetch in one batch the blobs of a blobless clone that the merge
+     *  may read: those changed on either side, as given by OURS and
+     *  THEIRS. */
+    private void prefetchBlobs(Map<String, String> ours, Map<String, String> theirs) {
+        Set<String> blobs = new HashSet<>();
+        for (Map<String, String> side : List.of(ours, theirs)) {
+            for (String id : side.values()) {
+                if (id != null) {
+                    blobs.add(id);
+                }
+            }
+        }
+        Promisor.prefetch(blobs);
+    }
+
+    /** Move files of the sides so that files renamed since the split
+     *  point on one side only are known by their new names on the other
+     *  side too, and so are merged with each other instead of appearing as
+     *  a deletion and an unrelated addition.  OURS and THEIRS are the
+     *  changes of the two sides. */
+    private void alignRenames(Map<String, String> ours, Map<String, String> theirs) {
+        Map<String, String> currentRenames = renames(ours);
+        Map<String, String> branchRenames = renames(theirs);
+        for (Map.Entry<String, String> rename : currentRenames.entrySet()) {
+            String from = rename.getKey(), to = rename.getValue();
+            String branchTo = branchRenames.get(from);
+            if (to.equals(branchTo)
+                    || (branchTo == null && _branch.get(from) != null && _branch.get(to) == null)) {
+                _split.move(from, to);
+                if (branchTo == null) {
+                    _branch.move(from, to);
+                }
+            }
+        }
+        for (Map.Entry<String, String> rename : branchRenames.entrySet()) {
+            String from = rename.getKey(), to = rename.getValue();
+            if (!currentRenames.containsKey(from) && _current.get(from) != null
+                    && _current.get(to) == null) {
+                _split.move(from, to);
+                _current.move(from, to);
+            }
+        }
+    }
+
+    /** Return the renames made by a side with the changes CHANGES since
+     *  the split point.  Only its deletions and additions are given to
+     *  Renames.detect, which looks at nothing else. */
+    private Map<String, String> renames(Map<String, String> changes) {
+        Map<String, String> deleted = new HashMap<>();
+        Map<String, String> added = new HashMap<>();
+        for (Map.Entry<String, String> entry : changes.entrySet()) {
+            String before = _split.files.get(entry.getKey());
+            if (entry.getValue() == null) {
+                deleted.put(entry.getKey(), before);
+            } else if (before == null) {
+                added.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (deleted.isEmpty() || added.isEmpty()) {
+            return new TreeMap<>();
+        }
+        return Renames.detect(deleted, added);
+    }
+
+    /** Return the files whose blobs differ between FROM and TO, as a map
+     *  from their names to their blobs in TO, or to null for files TO
+     *  lacks. */
+    private static Map<String, String> changes(Map<String, String> from, Map<String, String> to) {
+        if (to instanceof Overlay overlay) {
+            Map<String, String> result = changes(from, overlay._base);
+            for (Map.Entry<String, String> entry : overlay._changes.entrySet()) {
+                if (equal(from.get(entry.getKey()), entry.getValue())) {
+                    result.remove(entry.getKey());
+                } else {
+                    result.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return result;
+        }
+        Manifest fromManifest = Commit.asManifest(from);
+        Manifest toManifest = Commit.asManifest(to);
+        if (fromManifest != null && toManifest != null) {
+            return fromManifest.changesTo(toManifest);
+        }
+        Map<String, String> result = new TreeMap<>();
+        for (Map.Entry<String, String> entry : from.entrySet()) {
+            String id = to.get(entry.getKey());
+            if (!entry.getValue().equals(id)) {
+                result.put(entry.getKey(), id);
+            }
+        }
+        for (Map.Entry<String, String> entry : to.entrySet()) {
+            if (!from.containsKey(entry.getKey())) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff blobs A and B, either possibly null, are the
+     *  same. */
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** Return the contents of blob ID as text, or "" if ID is null. */
+    private static String text(String id) {
+        return id == null ? "" : Blob.readAsString(id);
+    }
+
+    /** An immutable file map made of a base file map with some files
+     *  changed: each maps to its new blob, or to null if removed. */
+    private static class Overlay extends AbstractMap<String, String> {
+
+        /** Return BASE with the changes CHANGES, which are taken over and
+         *  may be altered.  A base that is itself an Overlay is folded
+         *  in, so that lookups never go through more than one. */
+        static Map<String, String> of(Map<String, String> base, Map<String, String> changes) {
+            if (base instanceof Overlay inner) {
+                Map<String, String> folded = new HashMap<>(inner._changes);
+                folded.putAll(changes);
+                base = inner._base;
+                changes = folded;
+            }
+            int size = base.size();
+            for (Iterator<Map.Entry<String, String>> i = changes.entrySet().iterator();
+                 i.hasNext(); ) {
+                Map.Entry<String, String> entry = i.next();
+                String old = base.get(entry.getKey());
+                if (equal(old, entry.getValue())) {
+                    i.remove();
+                } else if (old == null) {
+                    size += 1;
+                } else if (entry.getValue() == null) {
+                    size -= 1;
+                }
+            }
+            return changes.isEmpty() ? base : new Overlay(base, changes, size);
+        }
+
+        /** BASE changed by CHANGES, having SIZE files. */
+        private Overlay(Map<String, String> base, Map<String, String> changes, int size) {
+            _base = base;
+            _changes = changes;
+            _size = size;
+        }
+
+        @Override
+        public int size() {
+            return _size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public String get(Object key) {
+            return _changes.containsKey(key) ? _changes.get(key) : _base.get(key);
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return _size;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    Iterator<Map.Entry<String, String>> base = _base.entrySet().iterator();
+                    Iterator<Map.Entry<String, String>> changed = _changes.entrySet().iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            while (_next == null && (base.hasNext() || changed.hasNext())) {
+                                if (base.hasNext()) {
+                                    Map.Entry<String, String> entry = base.next();
+                                    if (!_changes.containsKey(entry.getKey())) {
+                                        _next = entry;
+                                    }
+                                } else {
+                                    Map.Entry<String, String> entry = changed.next();
+                                    if (entry.getValue() != null) {
+                                        _next = new SimpleImmutableEntry<>(entry);
+                                    }
+                                }
+                            }
+                            return _next != null;
+                        }
+
+                        @Override
+                        public Map.Entry<String, String> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<String, String> result = _next;
+                            _next = null;
+                            return result;
+                        }
+
+                        /** The next entry, once found. */
+                        private Map.Entry<String, String> _next;
+                    };
+                }
+            };
+        }
+
+        /** The file map changed. */
+        private final Map<String, String> _base;
+        /** The changed files. */
+        private final Map<String, String> _changes;
+        /** The number of files. */
+        private final int _size;
+    }
+
+    /** One of the file maps merged, with the files alignRenames moves. */
+    private static class Side {
+        /** The file map FILES. */
+        Side(Map<String, String> files) {
+            this.files = files;
+        }
+
+        /** Return the blob of file NAME after the moves, or null if there
+         *  is none. */
+        String get(String name) {
+            return moved.containsKey(name) ? moved.get(name) : files.get(name);
+        }
+
+        /** Move file FROM to TO. */
+        void move(String from, String to) {
+            moved.put(to, get(from));
+            moved.put(from, null);
+        }
+
+        /** The file map, as given. */
+        final Map<String, String> files;
+        /** The files moved: each maps to its blob after the moves, or to
+         *  null if moved away. */
+        final Map<String, String> moved = new HashMap<>();
+    }
+
+    /** The file maps being merged. */
+    private final Side _split, _current, _branch;
+
+    /** The changes of the merged file map from _current. */
+    private final Map<String, String> _changes;
+
+    /** The merged file map. */
+    private final Map<String, String> _result;
+
+    /** Names of the conflicted files. */
+    private final Set<String> _conflicts = new TreeSet<>();
+}
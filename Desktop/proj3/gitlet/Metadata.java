@@ -14,6 +14,10 @@ public class Metadata implements Dumpable {
 
     public Map<String, String> branchMap;
 
+    /** The branches as last read or written, so that only the changes made
+     *  since are applied to branches shared with other worktrees. */
+    private transient Map<String, String> _branchesRead;
+
     public Metadata() {};
 
     public Metadata(String head, String currentBranch) {
@@ -27,18 +31,80 @@ public class Metadata implements Dumpable {
 
     }
 
+    /** Return a copy of this metadata. */
+    Metadata copy() {
+        Metadata result = new Metadata();
+        result.head = head;
+        result.currentBranch = currentBranch;
+        result.branchMap = new HashMap<>(branchMap);
+        result._branchesRead = _branchesRead;
+        return result;
+    }
+
     public void saveToFile() {
+        boolean shared = Worktrees.shared();
+        if (Batch.deferring() && !shared) {
+            Batch.keep(this, true);
+            return;
+        }
         File metadataFile = Utils.join(GITLET_META);
         Metadata newMetadata = new Metadata();
         newMetadata.head = head;
         newMetadata.currentBranch = currentBranch;
         newMetadata.branchMap = branchMap;
-        Utils.writeObject(metadataFile, newMetadata);
+        // The objects this names must be durable before it is
+        ObjectStore.flushAll();
+        try (Trace.Span span = Trace.span("metadata.write")) {
+            if (!shared) {
+                Utils.writeObject(metadataFile, newMetadata);
+                return;
+            }
+            // Other worktrees may have moved branches since these were read,
+            // and must see at once which branch this one has checked out
+            try (Worktrees.Lock lock = Worktrees.lock()) {
+                File commonFile = Utils.join(Worktrees.common(), "metadata");
+                Metadata common = Utils.readObject(commonFile, Metadata.class);
+                Map<String, String> before = _branchesRead == null ? Map.of() : _branchesRead;
+                common.branchMap.keySet().removeIf(name ->
+                        before.containsKey(name) && !branchMap.containsKey(name));
+                for (Map.Entry<String, String> entry : branchMap.entrySet()) {
+                    if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                        common.branchMap.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                branchMap = common.branchMap;
+                _branchesRead = new HashMap<>(branchMap);
+                newMetadata.branchMap = branchMap;
+                if (Worktrees.isLinked()) {
+                    Utils.writeObject(commonFile, common);
+                }
+                Utils.writeObject(metadataFile, newMetadata);
+            }
+            if (Batch.deferring()) {
+                Batch.keep(this, false);
+            }
+        }
     }
-    
+
     public static Metadata readFromFile() {
+        Metadata kept = Batch.metadata();
+        if (kept != null) {
+            return kept;
+        }
         File metadataFile = Utils.join(GITLET_META);
-        return Utils.readObject(metadataFile, Metadata.class);
+        try (Trace.Span span = Trace.span("metadata.read")) {
+            Metadata metadata = Utils.readObject(metadataFile, Metadata.class);
+            if (Worktrees.isLinked()) {
+                // The branches are those of the main worktree
+                File commonFile = Utils.join(Worktrees.common(), "metadata");
+                metadata.branchMap = Utils.readObject(commonFile, Metadata.class).branchMap;
+            }
+            metadata._branchesRead = new HashMap<>(metadata.branchMap);
+            if (Batch.deferring()) {
+                Batch.keep(metadata, false);
+            }
+            return metadata;
+        }
     }
 
     @Override
@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The objects of a repository: commits, whole blobs, chunk lists,
+ *  chunks and commit manifests, each of a KIND from KINDS and named by
+ *  the SHA-1 ID of its contents (or, for chunk lists, of the blob they
+ *  describe).  Objects are never modified or removed once written.
+ *  Commit, Blob and the transfer code read and write objects only through
+ *  this interface, so the backend is a property of each .gitlet
+ *  directory: a LooseStore, one file per object in a folder per kind, or
+ *  a BTreeStore, one file holding them all, chosen by "init --btree".
+ *  @author
+ */
+interface ObjectStore {
+
+    /** The kinds of object, which are also the folders of a loose store. */
+    List<String> KINDS = List.of("commits", "blobs", "chunked", "chunks", "manifests");
+
+    /** Return true iff object ID of kind KIND is stored. */
+    boolean contains(String kind, String id);
+
+    /** Return the contents of object ID of kind KIND, or null if it is
+     *  not stored. */
+    byte[] read(String kind, String id);
+
+    /** Store CONTENTS as object ID of kind KIND, unless already stored.
+     *  The object may not be durable until flush. */
+    void write(String kind, String id, byte[] contents);
+
+    /** Return the IDs of the stored objects of kind KIND, in order. */
+    List<String> list(String kind);
+
+    /** Make every object written so far durable. */
+    void flush();
+
+    /** Flush, and release any resources held. */
+    void close();
+
+    /** Return the object store of the .gitlet directory DIR. */
+    static ObjectStore open(File dir) {
+        synchronized (OPEN) {
+            return OPEN.computeIfAbsent(dir, d ->
+                Utils.join(d, BTreeStore.FILE_NAME).exists()
+                ? new BTreeStore(Utils.join(d, BTreeStore.FILE_NAME)) : new LooseStore(d));
+        }
+    }
+
+    /** Return the object store of this repository. */
+    static ObjectStore local() {
+        return open(Main.GITLET);
+    }
+
+    /** Make every object written by this command durable, in all stores
+     *  it opened. */
+    static void flushAll() {
+        synchronized (OPEN) {
+            for (ObjectStore store : OPEN.values()) {
+                store.flush();
+            }
+        }
+    }
+
+    /** Close the stores opened by this command. */
+    static void finish() {
+        synchronized (OPEN) {
+            for (ObjectStore store : OPEN.values()) {
+                store.close();
+            }
+            OPEN.clear();
+        }
+    }
+
+    /** The stores opened by this command, by .gitlet directory. */
+    Map<File, ObjectStore> OPEN = new HashMap<>();
+}
@@ -0,0 +1,81 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/** A pack: a single file holding a batch of repository objects, used to
+ *  transfer objects between repositories in one sequential stream instead
+ *  of one copy per object.
+ *
+ *  A pack starts with MAGIC, then holds, for each object, its kind (one
+ *  of ObjectStore.KINDS, e.g. "blobs"), its ID, its length and its bytes,
+ *  exactly as stored.  An empty folder name ends it.
+ *  Objects are unpacked in order, so a writer that puts blobs before the
+ *  commits that refer to them never leaves a commit without its contents.
+ *  @author
+ */
+class Pack {
+
+    /** First bytes of every pack. */
+    static final String MAGIC = "GITLETPACK1";
+
+    /** Write a pack to PACKFILE of the objects OBJECTS, each a pair of
+     *  kind and ID, read from the .gitlet directory FROM.  The kind may
+     *  instead be the name of another folder of FROM holding the object, in
+     *  which case a third element gives the kind to unpack it as.  Return the
+     *  number of bytes of object data written. */
+    static long write(File from, List<String[]> objects, File packFile) throws IOException {
+        ObjectStore store = ObjectStore.open(from);
+        long total = 0;
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(packFile), 1 << 16))) {
+            out.writeUTF(MAGIC);
+            for (String[] object : objects) {
+                byte[] contents = object.length > 2
+                    ? Utils.readContents(Utils.join(from, object[0], object[1]))
+                    : store.read(object[0], object[1]);
+                out.writeUTF(object.length > 2 ? object[2] : object[0]);
+                out.writeUTF(object[1]);
+                out.writeInt(contents.length);
+                out.write(contents);
+                total += contents.length;
+            }
+            out.writeUTF("");
+        }
+        Trace.count("pack.objects", objects.size());
+        Trace.count("pack.bytes", total);
+        return total;
+    }
+
+    /** Store the objects in PACKFILE into the .gitlet directory TO,
+     *  skipping any it already has, then delete PACKFILE. */
+    static void unpack(File packFile, File to) throws IOException {
+        ObjectStore store = ObjectStore.open(to);
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(packFile), 1 << 16))) {
+            if (!in.readUTF().equals(MAGIC)) {
+                throw new IOException("not a gitlet pack: " + packFile);
+            }
+            while (true) {
+                String kind = in.readUTF();
+                if (kind.isEmpty()) {
+                    break;
+                }
+                String id = in.readUTF();
+                byte[] contents = new byte[in.readInt()];
+                in.readFully(contents);
+                store.write(kind, id, contents);
+            }
+        }
+        store.flush();
+        Files.delete(packFile.toPath());
+    }
+}
@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Main.*;
+
+/** The promisor of a blobless clone: the remote repository that promises
+ *  to supply any blob the clone lacks.  A blobless clone gets every commit
+ *  but no blobs; Blob.read fetches a missing blob from the promisor's
+ *  .gitlet directory (REMOTE) into GITLET_PROMISED on first use.  That
+ *  folder is only a cache: when it grows past CACHELIMIT bytes, the least
+ *  recently used blobs are deleted at the end of the command, since they
+ *  can always be fetched again.  Blobs made locally go to GITLET_BLOBS as
+ *  usual and are never evicted.
+ *  @author
+ */
+public class Promisor implements Dumpable {
+
+    /** Default bound on the size of the cache, in bytes. */
+    static final long DEFAULT_CACHE_LIMIT = 256L << 20;
+
+    public String remote;
+
+    public long cacheLimit;
+
+    /** Sizes of the cached blobs, least recently used first. */
+    public LinkedHashMap<String, Long> cached;
+
+    public Promisor() {};
+
+    public Promisor(String remote) {
+        this.remote = remote;
+        cacheLimit = DEFAULT_CACHE_LIMIT;
+        cached = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /** Return the contents of blob ID from the cache, fetching it from the
+     *  promisor if need be, or null if this is not a blobless clone. */
+    static byte[] read(String id) {
+        Promisor promisor = get();
+        if (promisor == null) {
+            return null;
+        }
+        File file = Utils.join(GITLET_PROMISED, id);
+        byte[] contents;
+        if (file.exists()) {
+            Trace.count("promisor.hits");
+            contents = Utils.readContents(file);
+        } else {
+            contents = promisor.fetch(id);
+        }
+        synchronized (promisor) {
+            promisor.cached.put(id, (long) contents.length);
+            _dirty = true;
+        }
+        return contents;
+    }
+
+    /** Fetch into the cache, as one parallel batch, those of the blobs
+     *  IDS that are neither stored locally nor cached. */
+    static void prefetch(Collection<String> ids) {
+        Promisor promisor = get();
+        if (promisor == null) {
+            return;
+        }
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            if (!Blob.exists(id) && !Utils.join(GITLET_PROMISED, id).exists()) {
+                missing.add(id);
+            }
+        }
+        try (Trace.Span span = Trace.span("promisor.prefetch")) {
+            missing.parallelStream().distinct().forEach(id -> {
+                byte[] contents = promisor.fetch(id);
+                synchronized (promisor) {
+                    promisor.cached.put(id, (long) contents.length);
+                }
+            });
+        }
+        _dirty = _dirty || !missing.isEmpty();
+    }
+
+    /** Save the cache index if it changed, first evicting blobs beyond the
+     *  size limit. */
+    static void finish() {
+        if (_promisor != null && _dirty) {
+            long total = 0;
+            for (long size : _promisor.cached.values()) {
+                total += size;
+            }
+            Iterator<Map.Entry<String, Long>> oldest = _promisor.cached.entrySet().iterator();
+            while (total > _promisor.cacheLimit && oldest.hasNext()) {
+                Map.Entry<String, Long> entry = oldest.next();
+                Utils.join(GITLET_PROMISED, entry.getKey()).delete();
+                total -= entry.getValue();
+                oldest.remove();
+                Trace.count("promisor.evicted");
+            }
+            _promisor.saveToFile();
+        }
+        _promisor = null;
+        _dirty = false;
+    }
+
+    /** Copy blob ID from the promisor into the cache and return its
+     *  contents. */
+    private byte[] fetch(String id) {
+        Trace.count("promisor.fetched");
+        byte[] contents = Blob.readFrom(ObjectStore.open(new File(remote)), id);
+        if (contents == null) {
+            throw new GitletException("blob " + id + " is not available from " + remote);
+        }
+        GITLET_PROMISED.mkdir();
+        Utils.writeContents(Utils.join(GITLET_PROMISED, id), contents);
+        return contents;
+    }
+
+    /** Return the promisor of this repository, or null if it is not a
+     *  blobless clone. */
+    private static synchronized Promisor get() {
+        if (_promisor == null && GITLET_PROMISOR.exists()) {
+            _promisor = readFromFile();
+        }
+        return _promisor;
+    }
+
+    public void saveToFile() {
+        Promisor newPromisor = new Promisor();
+        newPromisor.remote = remote;
+        newPromisor.cacheLimit = cacheLimit;
+        newPromisor.cached = cached;
+        Utils.writeObject(GITLET_PROMISOR, newPromisor);
+    }
+
+    public static Promisor readFromFile() {
+        return Utils.readObject(GITLET_PROMISOR, Promisor.class);
+    }
+
+    /** The promisor read by this command, if any. */
+    private static Promisor _promisor;
+
+    /** True iff the cache index has changed. */
+    private static volatile boolean _dirty;
+
+    @Override
+    public void dump() {
+        System.out.println("Remote: " + remote);
+        System.out.println("Cache limit: " + cacheLimit);
+        System.out.println("Cached: " + cached.toString());
+    }
+}
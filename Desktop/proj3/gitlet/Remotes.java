@@ -0,0 +1,46 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static gitlet.Main.GITLET_REMOTES;
+
+/** The remotes known to this repository: a map from remote names to the
+ *  paths of their .gitlet directories.
+ *  @author
+ */
+public class Remotes implements Dumpable {
+
+    public Map<String, String> remoteMap;
+
+    public Remotes() {
+        remoteMap = new HashMap<>();
+    }
+
+    public void saveToFile() {
+        Remotes newRemotes = new Remotes();
+        newRemotes.remoteMap = remoteMap;
+        Utils.writeObject(GITLET_REMOTES, newRemotes);
+    }
+
+    /** Return the saved remotes, or none if none were ever added. */
+    public static Remotes readFromFile() {
+        if (!GITLET_REMOTES.exists()) {
+            return new Remotes();
+        }
+        return Utils.readObject(GITLET_REMOTES, Remotes.class);
+    }
+
+    /** Return the .gitlet directory of remote NAME, or null if there is no
+     *  such remote. */
+    public File directory(String name) {
+        String path = remoteMap.get(name);
+        return path == null ? null : new File(path);
+    }
+
+    @Override
+    public void dump() {
+        System.out.println("Remotes: " + remoteMap.toString());
+    }
+}
@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/** Detection of renamed files between two versions of a tree.
+ *
+ *  A file deleted from the first version is taken to be renamed to a file
+ *  added in the second if their contents are identical or, failing that,
+ *  similar enough.  Rather than diffing every deleted file against every
+ *  added one, each blob gets a MinHash Sketch (cached by blob ID), and the
+ *  sketches of deleted files are indexed by bands of BAND_ROWS values
+ *  (locality-sensitive hashing).  An added file is compared only with the
+ *  deleted files that share a band with it, and only the best CANDIDATES
+ *  of those by estimated similarity are confirmed with LinearDiff.
+ *  @author
+ */
+class Renames {
+
+    /** Minimum similarity, as the fraction of lines in common, of a
+     *  rename. */
+    static final double THRESHOLD = 0.5;
+
+    /** Number of sketch values per band of the index. */
+    static final int BAND_ROWS = 4;
+
+    /** Number of candidates per added file confirmed by diffing. */
+    static final int CANDIDATES = 3;
+
+    /** Return the renames from BEFORE to AFTER, both maps from file names
+     *  to blob IDs, as a map from old names to new names.  All contents
+     *  are read from the blob store. */
+    static Map<String, String> detect(Map<String, String> before, Map<String, String> after) {
+        return detect(before, after, name -> Blob.read(after.get(name)));
+    }
+
+    /** As for detect(BEFORE, AFTER), but reading the contents of file NAME
+     *  of AFTER as AFTERCONTENTS.apply(NAME). */
+    static Map<String, String> detect(Map<String, String> before, Map<String, String> after,
+                                      Function<String, byte[]> afterContents) {
+        try (Trace.Span span = Trace.span("renames")) {
+            Map<String, String> result = new TreeMap<>();
+            List<String> added = new ArrayList<>();
+            Map<String, List<String>> deletedByBlob = new HashMap<>();
+            for (Map.Entry<String, String> entry : before.entrySet()) {
+                if (!after.containsKey(entry.getKey())) {
+                    deletedByBlob.computeIfAbsent(entry.getValue(), k -> new ArrayList<>())
+                        .add(entry.getKey());
+                }
+            }
+
+            // Identical contents first, which needs no reading at all
+            for (Map.Entry<String, String> entry : new TreeMap<>(after).entrySet()) {
+                if (before.containsKey(entry.getKey())) {
+                    continue;
+                }
+                List<String> sources = deletedByBlob.get(entry.getValue());
+                if (sources != null && !sources.isEmpty()) {
+                    result.put(sources.remove(0), entry.getKey());
+                } else {
+                    added.add(entry.getKey());
+                }
+            }
+            List<String> deleted = new ArrayList<>();
+            for (List<String> names : deletedByBlob.values()) {
+                deleted.addAll(names);
+            }
+            Collections.sort(deleted);
+            if (deleted.isEmpty() || added.isEmpty()) {
+                return result;
+            }
+
+            // Index the sketches of the deleted files by band
+            List<Sketch> deletedSketches = new ArrayList<>();
+            Map<Long, List<Integer>> buckets = new HashMap<>();
+            for (int d = 0; d < deleted.size(); d += 1) {
+                String blobID = before.get(deleted.get(d));
+                Sketch sketch = Sketch.of(blobID, () -> Blob.read(blobID));
+                deletedSketches.add(sketch);
+                if (sketch.lines == 0) {
+                    continue;
+                }
+                for (int band = 0; band < Sketch.SIZE / BAND_ROWS; band += 1) {
+                    buckets.computeIfAbsent(bandKey(sketch, band), k -> new ArrayList<>()).add(d);
+                }
+            }
+
+            // Confirm the most promising pairs, then take the best first
+            List<Match> matches = new ArrayList<>();
+            for (String name : added) {
+                String blobID = after.get(name);
+                Sketch sketch = Sketch.of(blobID, () -> afterContents.apply(name));
+                if (sketch.lines == 0) {
+                    continue;
+                }
+                Map<Integer, Double> estimates = new HashMap<>();
+                for (int band = 0; band < Sketch.SIZE / BAND_ROWS; band += 1) {
+                    List<Integer> bucket = buckets.get(bandKey(sketch, band));
+                    if (bucket != null) {
+                        for (int d : bucket) {
+                            estimates.computeIfAbsent(d, k -> sketch.similarity(deletedSketches.get(k)));
+                        }
+                    }
+                }
+                List<Integer> candidates = new ArrayList<>(estimates.keySet());
+                candidates.sort((d1, d2) -> Double.compare(estimates.get(d2), estimates.get(d1)));
+                byte[] contents = null;
+                for (int d : candidates.subList(0, Math.min(CANDIDATES, candidates.size()))) {
+                    if (contents == null) {
+                        contents = afterContents.apply(name);
+                    }
+                    Trace.count("renames.diffed");
+                    double score = similarity(Blob.read(before.get(deleted.get(d))), contents);
+                    if (score >= THRESHOLD) {
+                        matches.add(new Match(score, deleted.get(d), name));
+                    }
+                }
+            }
+            matches.sort((m1, m2) -> Double.compare(m2.score, m1.score));
+            Set<String> renamedTo = new HashSet<>();
+            for (Match match : matches) {
+                if (!result.containsKey(match.from) && renamedTo.add(match.to)) {
+                    result.put(match.from, match.to);
+                }
+            }
+            return result;
+        }
+    }
+
+    /** Return the fraction of the lines of CONTENTS1 and CONTENTS2 that
+     *  they have in common. */
+    static double similarity(byte[] contents1, byte[] contents2) {
+        List<String> lines1 = UnifiedDiff.splitLines(contents1);
+        List<String> lines2 = UnifiedDiff.splitLines(contents2);
+        if (lines1.isEmpty() && lines2.isEmpty()) {
+            return 1.0;
+        }
+        int[] edits = LinearDiff.diffs(lines1, lines2);
+        int common = lines1.size();
+        for (int e = 0; e < edits.length; e += 4) {
+            common -= edits[e + 1];
+        }
+        return 2.0 * common / (lines1.size() + lines2.size());
+    }
+
+    /** Return the index key of band BAND of SKETCH. */
+    private static long bandKey(Sketch sketch, int band) {
+        long key = band;
+        for (int i = band * BAND_ROWS; i < (band + 1) * BAND_ROWS; i += 1) {
+            key = key * 0x100000001b3L + sketch.minHashes[i];
+        }
+        return key;
+    }
+
+    /** A confirmed candidate rename of FROM to TO. */
+    private static class Match {
+        Match(double score, String from, String to) {
+            this.score = score;
+            this.from = from;
+            this.to = to;
+        }
+
+        /** Similarity of the two files. */
+        private final double score;
+        /** Old and new names. */
+        private final String from, to;
+    }
+}
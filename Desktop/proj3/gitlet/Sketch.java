@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import static gitlet.Main.GITLET_SKETCHES;
+
+/** A MinHash sketch of the set of lines of a blob, used by Renames to find
+ *  similar files without diffing every pair.  Cached in GITLET_SKETCHES
+ *  under the blob's ID.
+ *  @author
+ */
+public class Sketch implements Dumpable {
+
+    /** Number of hash functions, and so of values in a sketch. */
+    static final int SIZE = 64;
+
+    public int lines;
+
+    public int[] minHashes;
+
+    public Sketch() {};
+
+    /** The sketch of the lines of CONTENTS. */
+    public Sketch(byte[] contents) {
+        minHashes = new int[SIZE];
+        Arrays.fill(minHashes, Integer.MAX_VALUE);
+        for (String line : UnifiedDiff.splitLines(contents)) {
+            lines += 1;
+            long shingle = mix(line.hashCode() + ((long) line.length() << 32));
+            for (int i = 0; i < SIZE; i += 1) {
+                int value = (int) (mix(shingle ^ SEEDS[i]) >>> 33);
+                if (value < minHashes[i]) {
+                    minHashes[i] = value;
+                }
+            }
+        }
+    }
+
+    /** Return an estimate of the Jaccard similarity of the line sets
+     *  sketched by this and OTHER. */
+    public double similarity(Sketch other) {
+        int same = 0;
+        for (int i = 0; i < SIZE; i += 1) {
+            if (minHashes[i] == other.minHashes[i]) {
+                same += 1;
+            }
+        }
+        return (double) same / SIZE;
+    }
+
+    public void saveToFile(String blobID) {
+        GITLET_SKETCHES.mkdir();
+        Sketch newSketch = new Sketch();
+        newSketch.lines = lines;
+        newSketch.minHashes = minHashes;
+        Utils.writeObject(Utils.join(GITLET_SKETCHES, blobID), newSketch);
+    }
+
+    /** Return the sketch of blob BLOBID, computing it from the contents
+     *  given by CONTENTS and caching it if need be. */
+    public static Sketch of(String blobID, Supplier<byte[]> contents) {
+        File file = Utils.join(GITLET_SKETCHES, blobID);
+        if (file.exists()) {
+            Trace.count("sketch.cacheHits");
+            return Utils.readObject(file, Sketch.class);
+        }
+        Trace.count("sketch.computed");
+        Sketch result = new Sketch(contents.get());
+        result.saveToFile(blobID);
+        return result;
+    }
+
+    /** Return X scrambled (the SplitMix64 finalizer). */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** The seeds of the SIZE hash functions. */
+    private static final long[] SEEDS = new long[SIZE];
+
+    static {
+        for (int i = 0; i < SIZE; i += 1) {
+            SEEDS[i] = mix(0x9e3779b97f4a7c15L * (i + 1));
+        }
+    }
+
+    @Override
+    public void dump() {
+        System.out.println("Lines: " + lines);
+        System.out.println("MinHashes: " + Arrays.toString(minHashes));
+    }
+}
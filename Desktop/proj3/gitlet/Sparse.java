@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Main.GITLET_SPARSE;
+
+/** The sparse-checkout patterns of the repository: glob patterns (as for
+ *  java.nio.file.FileSystem.getPathMatcher) naming the files that are
+ *  materialized in the working directory.  Files that match none of them
+ *  stay recorded in commits but are not written by checkout, reset or
+ *  merge, and are not reported by status.  Without GITLET_SPARSE, every
+ *  file is included.
+ *  @author
+ */
+public class Sparse implements Dumpable {
+
+    public List<String> patterns;
+
+    public Sparse() {
+        patterns = new ArrayList<>();
+    }
+
+    /** Return true iff file FILENAME is in the sparse set. */
+    static boolean includes(String fileName) {
+        load();
+        if (_matchers == null) {
+            return true;
+        }
+        for (PathMatcher matcher : _matchers) {
+            if (matcher.matches(Paths.get(fileName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff sparse checkout is in effect. */
+    static boolean enabled() {
+        load();
+        return _matchers != null;
+    }
+
+    /** Read the patterns, if not done yet by this command. */
+    private static void load() {
+        if (!_loaded) {
+            _loaded = true;
+            if (GITLET_SPARSE.exists()) {
+                setMatchers(readFromFile().patterns);
+            }
+        }
+    }
+
+    /** Forget the patterns read by this command. */
+    static void finish() {
+        _loaded = false;
+        _matchers = null;
+    }
+
+    public void saveToFile() {
+        Sparse newSparse = new Sparse();
+        newSparse.patterns = patterns;
+        Utils.writeObject(GITLET_SPARSE, newSparse);
+        _loaded = true;
+        setMatchers(patterns);
+    }
+
+    public static Sparse readFromFile() {
+        return Utils.readObject(GITLET_SPARSE, Sparse.class);
+    }
+
+    /** Turn off sparse checkout. */
+    static void disable() {
+        GITLET_SPARSE.delete();
+        _loaded = true;
+        _matchers = null;
+    }
+
+    /** Use PATTERNS for includes. */
+    private static void setMatchers(List<String> patterns) {
+        _matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            _matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+    }
+
+    /** True once the patterns have been read. */
+    private static boolean _loaded;
+
+    /** Matchers for the patterns, or null if every file is included. */
+    private static List<PathMatcher> _matchers;
+
+    @Override
+    public void dump() {
+        System.out.println("Patterns: " + patterns.toString());
+    }
+}
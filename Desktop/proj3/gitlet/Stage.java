@@ -28,20 +28,38 @@ public class Stage implements Dumpable {
         Commit curCommit = Commit.readFromFile(head);
 
         // Hash the content of this file
-        String contentFileHash = Utils.sha1(Utils.readContents(contentFile));
+        byte[] contents = Utils.readContents(contentFile);
+        stageFile(fileName, contents, Utils.sha1(contents), curCommit);
 
+        // Save stage back to file
+        saveToFile();
+    }
 
+    /** Stage every new or changed file in the working directory ("add ."). */
+    public void addAllFilesToStage(String head) throws IOException {
+        Commit curCommit = Commit.readFromFile(head);
+        for (String fileName : WorkingTree.fileNames()) {
+            // Skip files whose content is already what would be committed
+            String contentFileHash = WorkingTree.hash(fileName);
+            String stagedHash = fileMapAddition.containsKey(fileName)
+                    ? fileMapAddition.get(fileName) : curCommit.fileMap.get(fileName);
+            if (contentFileHash == null
+                    || (contentFileHash.equals(stagedHash) && !fileMapDeletion.containsKey(fileName))) {
+                continue;
+            }
+            byte[] contents = Utils.readContents(Utils.join(CWD, fileName));
+            stageFile(fileName, contents, contentFileHash, curCommit);
+        }
+        saveToFile();
+    }
+
+    private void stageFile(String fileName, byte[] contents, String contentFileHash,
+                           Commit curCommit) throws IOException {
         // For removing case
         if (fileMapDeletion.containsKey(fileName)) {
             // Restore file back to CWD
-            File blobFile = Utils.join(GITLET_BLOBS, fileMapDeletion.get(fileName));
-            File cwdFile = Utils.join(CWD, fileName);
-            if (!cwdFile.exists()) {
-                cwdFile.createNewFile();
-            }
-            Utils.writeContents(cwdFile, Utils.readContents(blobFile));
+            Links.write(Utils.join(CWD, fileName), Blob.read(fileMapDeletion.get(fileName)));
             fileMapDeletion.remove(fileName);
-            saveToFile();
             return;
         }
 
@@ -53,17 +71,14 @@ public class Stage implements Dumpable {
         } else {
             // If the file is new/changed, stage it
             fileMapAddition.put(fileName, contentFileHash);
+            // and keep further changes to it away from any blob it links to
+            Links.breakLink(Utils.join(CWD, fileName));
 
-            // Create the file if it's not exist in the blobs
-            File blobFile = Utils.join(GITLET_BLOBS, contentFileHash);
-            if (!blobFile.exists()) {
-                blobFile.createNewFile();
-                Utils.writeContents(blobFile, Utils.readContents(contentFile));
+            // Create the blob if it's not exist in the blobs
+            try (Trace.Span span = Trace.span("blob.write")) {
+                Blob.write(contentFileHash, contents);
             }
         }
-
-        // Save stage back to file
-        saveToFile();
     }
 
     public void removeFileFromStage(String fileName, String head) {
@@ -102,16 +117,42 @@ public class Stage implements Dumpable {
     }
 
     public void saveToFile() {
+        if (Batch.deferring()) {
+            Batch.keep(this, true);
+            return;
+        }
         File stageFile = Utils.join(GITLET_STAGE);
         Stage newStage = new Stage();
         newStage.fileMapAddition = fileMapAddition;
         newStage.fileMapDeletion = fileMapDeletion;
-        Utils.writeObject(stageFile, newStage);
+        // The objects this names must be durable before it is
+        ObjectStore.flushAll();
+        try (Trace.Span span = Trace.span("stage.write")) {
+            Utils.writeObject(stageFile, newStage);
+        }
     }
 
     public static Stage readFromFile() {
+        Stage kept = Batch.stage();
+        if (kept != null) {
+            return kept;
+        }
         File stageFile = Utils.join(GITLET_STAGE);
-        return Utils.readObject(stageFile, Stage.class);
+        try (Trace.Span span = Trace.span("stage.read")) {
+            Stage stage = Utils.readObject(stageFile, Stage.class);
+            if (Batch.deferring()) {
+                Batch.keep(stage, false);
+            }
+            return stage;
+        }
+    }
+
+    /** Return a copy of this stage. */
+    Stage copy() {
+        Stage result = new Stage();
+        result.fileMapAddition = new HashMap<>(fileMapAddition);
+        result.fileMapDeletion = new HashMap<>(fileMapDeletion);
+        return result;
     }
 
     @Override
@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Transfer of commits and their contents from one repository to another,
+ *  both given as .gitlet directories, as for fetch and push.
+ *
+ *  The commits to send are found by walking back from the tip being sent
+ *  and stopping at every commit the receiver already has (the "haves").
+ *  For each commit sent, only the blobs that differ from both of its
+ *  parents can be new to the receiver (it has every blob of the haves), so
+ *  only those are looked up there.  The work done and the data sent are
+ *  thus proportional to what the receiver is missing, not to the size of
+ *  either repository.  Everything missing is streamed as one Pack, blobs
+ *  first, then manifests, then commits, parents before children.
+ *  @author
+ */
+class Sync {
+
+    /** A transfer from the repository in FROM to that in TO. */
+    Sync(File from, File to) {
+        _from = from;
+        _to = to;
+        _fromStore = ObjectStore.open(from);
+        _toStore = ObjectStore.open(to);
+    }
+
+    /** Copy to the receiver the commits MISSING, as returned by
+     *  missingCommits, with the contents it does not already have. */
+    void send(List<String> missing) throws IOException {
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        Set<String> objects = new HashSet<>();
+        List<String[]> pack = new ArrayList<>();
+        for (String commitID : missing) {
+            Commit commit = commit(commitID);
+            Map<String, String> parent1 = parentFiles(commit.parent1);
+            Map<String, String> parent2 = parentFiles(commit.parent2);
+            for (Map.Entry<String, String> entry : commit.fileMap.entrySet()) {
+                String blobID = entry.getValue();
+                if (blobID.equals(parent1.get(entry.getKey()))
+                    || blobID.equals(parent2.get(entry.getKey()))
+                    || !objects.add(blobID)) {
+                    continue;
+                }
+                addBlob(blobID, pack);
+            }
+        }
+        for (String commitID : missing) {
+            String manifest = commit(commitID).manifest;
+            if (objects.add(manifest) && !_toStore.contains("manifests", manifest)) {
+                pack.add(new String[] { "manifests", manifest });
+            }
+        }
+        for (String commitID : missing) {
+            pack.add(new String[] { "commits", commitID });
+        }
+
+        File packFile = Utils.join(_to, "incoming-" + ProcessHandle.current().pid() + ".pack");
+        try (Trace.Span span = Trace.span("sync.pack")) {
+            Pack.write(_from, pack, packFile);
+        }
+        try (Trace.Span span = Trace.span("sync.unpack")) {
+            Pack.unpack(packFile, _to);
+        }
+    }
+
+    /** Return true iff commit ANCESTOR of the sender is TIP or one of its
+     *  ancestors.  Call after missingCommits(TIP). */
+    boolean isAncestor(String ancestor, String tip) {
+        // Usually the ancestor is one of the haves found by missingCommits
+        if (_haves.contains(ancestor) || ancestor.equals(tip)) {
+            return true;
+        }
+        if (_from == Main.GITLET) {
+            return Bitmaps.isAncestor(ancestor, tip);
+        }
+        Set<String> seen = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        queue.add(tip);
+        while (!queue.isEmpty()) {
+            String commitID = queue.remove();
+            if (commitID.equals(ancestor)) {
+                return true;
+            }
+            if (!seen.add(commitID)) {
+                continue;
+            }
+            Commit commit = commit(commitID);
+            if (commit.parent1 != null) {
+                queue.add(commit.parent1);
+            }
+            if (commit.parent2 != null) {
+                queue.add(commit.parent2);
+            }
+        }
+        return false;
+    }
+
+    /** Return the commits reachable from TIP that the receiver lacks,
+     *  parents before children, and record in _haves the commits it has at
+     *  which the walk stopped. */
+    List<String> missingCommits(String tip) {
+        List<String> result = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        // Iterative depth-first search, emitting each commit after its parents
+        ArrayDeque<String[]> stack = new ArrayDeque<>();
+        stack.push(new String[] { tip, null });
+        while (!stack.isEmpty()) {
+            String[] top = stack.pop();
+            String commitID = top[0];
+            if (top[1] != null) {
+                result.add(commitID);
+                continue;
+            }
+            if (!seen.add(commitID)) {
+                continue;
+            }
+            Trace.count("sync.lookups");
+            if (_toStore.contains("commits", commitID)) {
+                _haves.add(commitID);
+                continue;
+            }
+            Commit commit = commit(commitID);
+            stack.push(new String[] { commitID, "done" });
+            if (commit.parent2 != null) {
+                stack.push(new String[] { commit.parent2, null });
+            }
+            if (commit.parent1 != null) {
+                stack.push(new String[] { commit.parent1, null });
+            }
+        }
+        return result;
+    }
+
+    /** Add to PACK blob BLOBID of the sender, and its chunks if it is
+     *  chunked, unless the receiver has it. */
+    private void addBlob(String blobID, List<String[]> pack) {
+        Trace.count("sync.lookups");
+        if (!Blob.existsIn(_fromStore, blobID)) {
+            // A blobless clone sending a blob it has left with its promisor
+            if (!Blob.existsIn(_toStore, blobID)) {
+                if (_from == Main.GITLET) {
+                    Blob.read(blobID);
+                }
+                pack.add(new String[] { "promised", blobID, "blobs" });
+            }
+            return;
+        }
+        if (_fromStore.contains("blobs", blobID)) {
+            if (!_toStore.contains("blobs", blobID)) {
+                pack.add(new String[] { "blobs", blobID });
+            }
+            return;
+        }
+        if (_toStore.contains("chunked", blobID)) {
+            return;
+        }
+        ChunkList chunkList =
+            Utils.deserialize(_fromStore.read("chunked", blobID), ChunkList.class);
+        for (String chunkID : chunkList.chunkIDs) {
+            Trace.count("sync.lookups");
+            if (_sentChunks.add(chunkID) && !_toStore.contains("chunks", chunkID)) {
+                pack.add(new String[] { "chunks", chunkID });
+            }
+        }
+        pack.add(new String[] { "chunked", blobID });
+    }
+
+    /** Return the files of commit COMMITID of the sender, or none if
+     *  COMMITID is null. */
+    private Map<String, String> parentFiles(String commitID) {
+        return commitID == null ? Map.of() : commit(commitID).fileMap;
+    }
+
+    /** Return commit COMMITID of the sender. */
+    private Commit commit(String commitID) {
+        return _commits.computeIfAbsent(commitID, id -> Commit.readFrom(_fromStore, id));
+    }
+
+    /** The .gitlet directories of the sender and receiver. */
+    private final File _from, _to;
+
+    /** The object stores of the sender and receiver. */
+    private final ObjectStore _fromStore, _toStore;
+
+    /** Commits of the sender read so far. */
+    private final Map<String, Commit> _commits = new HashMap<>();
+
+    /** Commits the receiver was found to have. */
+    private final Set<String> _haves = new HashSet<>();
+
+    /** Chunks already put in the pack. */
+    private final Set<String> _sentChunks = new HashSet<>();
+}
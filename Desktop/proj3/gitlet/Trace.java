@@ -0,0 +1,214 @@
+package gitlet;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Per-command counters and phase timers.  Tracing is off unless the
+ *  command line starts with --trace or the environment variable
+ *  GITLET_TRACE is set, and when it is off every entry point returns after
+ *  testing a single static flag.  GITLET_TRACE may be
+ *      "1" or "json"  print a JSON summary on the standard error (the
+ *                     same as --trace);
+ *      "jfr"          emit the phases and counters as JDK Flight Recorder
+ *                     events (gitlet.Phase, gitlet.Counter), for use with
+ *                     java -XX:StartFlightRecording;
+ *      anything else  the name of a file to which to append the JSON
+ *                     summary as one line.
+ *  @author
+ */
+class Trace {
+
+    /** True iff tracing is on. */
+    static boolean enabled;
+
+    /** A timed phase, to be used in a try-with-resources statement. */
+    interface Span extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /** The span returned when tracing is off. */
+    private static final Span NO_SPAN = () -> { };
+
+    /** Enable tracing according to ARGS and the environment, and return
+     *  ARGS without a leading --trace. */
+    static String[] configure(String[] args) {
+        String mode = System.getenv("GITLET_TRACE");
+        if (args.length > 0 && args[0].equals("--trace")) {
+            String[] rest = new String[args.length - 1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            args = rest;
+            mode = "json";
+        }
+        if (mode != null && !mode.isEmpty() && !enabled) {
+            enabled = true;
+            _mode = mode.equals("1") ? "json" : mode;
+            _command = args.length > 0 ? args[0] : "";
+            _start = System.nanoTime();
+            Runtime.getRuntime().addShutdownHook(new Thread(Trace::report));
+        }
+        return args;
+    }
+
+    /** Add 1 to counter NAME. */
+    static void count(String name) {
+        count(name, 1);
+    }
+
+    /** Add AMOUNT to counter NAME. */
+    static void count(String name, long amount) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (COUNTERS) {
+            COUNTERS.merge(name, amount, Long::sum);
+        }
+    }
+
+    /** Return a span timing phase NAME until it is closed. */
+    static Span span(String name) {
+        if (!enabled) {
+            return NO_SPAN;
+        }
+        if (_mode.equals("jfr")) {
+            PhaseEvent event = new PhaseEvent();
+            event.phase = name;
+            event.begin();
+            return () -> {
+                event.end();
+                event.commit();
+            };
+        }
+        long start = System.nanoTime();
+        return () -> {
+            long elapsed = System.nanoTime() - start;
+            synchronized (TIMERS) {
+                long[] timer = TIMERS.computeIfAbsent(name, k -> new long[2]);
+                timer[0] += 1;
+                timer[1] += elapsed;
+            }
+        };
+    }
+
+    /** Emit the summary of the command, if tracing and it has not been
+     *  emitted yet.  Called when the command finishes, and from a shutdown
+     *  hook in case it exits early. */
+    static synchronized void report() {
+        if (!enabled || _reported) {
+            return;
+        }
+        _reported = true;
+        if (_mode.equals("jfr")) {
+            synchronized (COUNTERS) {
+                for (Map.Entry<String, Long> entry : COUNTERS.entrySet()) {
+                    CounterEvent event = new CounterEvent();
+                    event.command = _command;
+                    event.name = entry.getKey();
+                    event.value = entry.getValue();
+                    event.commit();
+                }
+            }
+            return;
+        }
+
+        String json = toJson();
+        if (_mode.equals("json")) {
+            PrintStream err = System.err;
+            err.println(json);
+            err.flush();
+        } else {
+            try (PrintWriter out =
+                     new PrintWriter(new FileWriter(_mode, true))) {
+                out.println(json);
+            } catch (IOException excp) {
+                System.err.println("cannot write trace: " + excp.getMessage());
+            }
+        }
+    }
+
+    /** Return the summary of the command as a one-line JSON object. */
+    private static String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append(String.format(Locale.ROOT,
+                                  "{\"command\": \"%s\", \"millis\": %.3f, \"counters\": {",
+                                  _command.replace("\"", "\\\""),
+                                  (System.nanoTime() - _start) / 1e6));
+        String sep = "";
+        synchronized (COUNTERS) {
+            for (Map.Entry<String, Long> entry : COUNTERS.entrySet()) {
+                json.append(String.format("%s\"%s\": %d", sep, entry.getKey(),
+                                          entry.getValue()));
+                sep = ", ";
+            }
+        }
+        json.append("}, \"phases\": {");
+        sep = "";
+        synchronized (TIMERS) {
+            for (Map.Entry<String, long[]> entry : TIMERS.entrySet()) {
+                json.append(String.format(Locale.ROOT,
+                                          "%s\"%s\": {\"count\": %d, \"millis\": %.3f}",
+                                          sep, entry.getKey(),
+                                          entry.getValue()[0],
+                                          entry.getValue()[1] / 1e6));
+                sep = ", ";
+            }
+        }
+        return json.append("}}").toString();
+    }
+
+    /** JFR event for a timed phase. */
+    @Name("gitlet.Phase")
+    @Label("Gitlet Phase")
+    @Category("Gitlet")
+    static class PhaseEvent extends Event {
+        /** Name of the phase. */
+        @Label("Phase")
+        String phase;
+    }
+
+    /** JFR event carrying the final value of a counter. */
+    @Name("gitlet.Counter")
+    @Label("Gitlet Counter")
+    @Category("Gitlet")
+    static class CounterEvent extends Event {
+        /** The gitlet command. */
+        @Label("Command")
+        String command;
+
+        /** Name of the counter. */
+        @Label("Name")
+        String name;
+
+        /** Final value of the counter. */
+        @Label("Value")
+        long value;
+    }
+
+    /** Counter values by name. */
+    private static final Map<String, Long> COUNTERS = new TreeMap<>();
+
+    /** Invocation count and total nanoseconds of each phase. */
+    private static final Map<String, long[]> TIMERS = new TreeMap<>();
+
+    /** How the summary is emitted: "json", "jfr" or a file name. */
+    private static String _mode;
+
+    /** The command being traced. */
+    private static String _command;
+
+    /** System.nanoTime() at the start of the command. */
+    private static long _start;
+
+    /** True once the summary has been emitted. */
+    private static boolean _reported;
+}
@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Formatting of the differences between two versions of a file as a
+ *  unified diff, with CONTEXT lines of context around each change.
+ *  @author
+ */
+class UnifiedDiff {
+
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Return the unified diff that converts CONTENTS1 (null if the file
+     *  does not exist) to CONTENTS2 (likewise) for the file NAME, or the
+     *  empty string if they are the same. */
+    static String format(String name, byte[] contents1, byte[] contents2) {
+        return format(name, name, contents1, contents2);
+    }
+
+    /** As for format(NAME, CONTENTS1, CONTENTS2), where the file was
+     *  renamed from NAME1 to NAME2. */
+    static String format(String name1, String name2, byte[] contents1, byte[] contents2) {
+        StringBuilder out = new StringBuilder();
+        out.append("diff --gitlet a/").append(name1).append(" b/").append(name2).append("\n");
+        if (contents1 == null) {
+            out.append("new file\n");
+        } else if (contents2 == null) {
+            out.append("deleted file\n");
+        }
+        boolean renamed = !name1.equals(name2);
+        if (renamed) {
+            out.append("rename from ").append(name1).append("\n");
+            out.append("rename to ").append(name2).append("\n");
+        }
+        if (isBinary(contents1) || isBinary(contents2)) {
+            out.append("Binary files ").append(contents1 == null ? "/dev/null" : "a/" + name1)
+                .append(" and ").append(contents2 == null ? "/dev/null" : "b/" + name2)
+                .append(" differ\n");
+            return out.toString();
+        }
+
+        List<String> lines1 = splitLines(contents1);
+        List<String> lines2 = splitLines(contents2);
+        int[] edits = LinearDiff.diffs(lines1, lines2);
+        if (edits.length == 0) {
+            return contents1 == null || contents2 == null || renamed ? out.toString() : "";
+        }
+        out.append("--- ").append(contents1 == null ? "/dev/null" : "a/" + name1).append("\n");
+        out.append("+++ ").append(contents2 == null ? "/dev/null" : "b/" + name2).append("\n");
+
+        int first = 0;
+        while (first < edits.length) {
+            // Gather the edits close enough to share context into one hunk
+            int last = first;
+            while (last + 4 < edits.length
+                   && edits[last + 4] - (edits[last] + edits[last + 1]) <= 2 * CONTEXT) {
+                last += 4;
+            }
+            int start1 = Math.max(0, edits[first] - CONTEXT);
+            int start2 = edits[first + 2] - (edits[first] - start1);
+            int end1 = Math.min(lines1.size(), edits[last] + edits[last + 1] + CONTEXT);
+            int end2 = edits[last + 2] + edits[last + 3]
+                + (end1 - edits[last] - edits[last + 1]);
+            out.append("@@ -").append(range(start1, end1 - start1))
+                .append(" +").append(range(start2, end2 - start2)).append(" @@\n");
+
+            int k1 = start1;
+            for (int e = first; e <= last; e += 4) {
+                for (; k1 < edits[e]; k1 += 1) {
+                    appendLine(out, ' ', lines1.get(k1));
+                }
+                for (int i = 0; i < edits[e + 1]; i += 1) {
+                    appendLine(out, '-', lines1.get(edits[e] + i));
+                }
+                for (int i = 0; i < edits[e + 3]; i += 1) {
+                    appendLine(out, '+', lines2.get(edits[e + 2] + i));
+                }
+                k1 = edits[e] + edits[e + 1];
+            }
+            for (; k1 < end1; k1 += 1) {
+                appendLine(out, ' ', lines1.get(k1));
+            }
+            first = last + 4;
+        }
+        return out.toString();
+    }
+
+    /** Return the lines of CONTENTS (empty if null), each with its
+     *  terminating newline, if any. */
+    static List<String> splitLines(byte[] contents) {
+        List<String> result = new ArrayList<>();
+        if (contents == null) {
+            return result;
+        }
+        String text = new String(contents, StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end == -1 ? text.length() : end + 1;
+            result.add(text.substring(start, end));
+            start = end;
+        }
+        return result;
+    }
+
+    /** Return true iff CONTENTS looks like binary data. */
+    private static boolean isBinary(byte[] contents) {
+        if (contents == null) {
+            return false;
+        }
+        for (int i = 0; i < Math.min(contents.length, 8000); i += 1) {
+            if (contents[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the hunk-header form of the LENGTH lines starting at
+     *  0-based line START. */
+    private static String range(int start, int length) {
+        if (length == 0) {
+            return start + ",0";
+        }
+        return (start + 1) + (length == 1 ? "" : "," + length);
+    }
+
+    /** Append LINE to OUT, marked with KIND. */
+    private static void appendLine(StringBuilder out, char kind, String line) {
+        out.append(kind).append(line);
+        if (!line.endsWith("\n")) {
+            out.append("\n\\ No newline at end of file\n");
+        }
+    }
+}
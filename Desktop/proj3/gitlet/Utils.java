@@ -3,6 +3,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -34,13 +35,16 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
+        try (Trace.Span span = Trace.span("sha1")) {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
             for (Object val : vals) {
                 if (val instanceof byte[]) {
+                    Trace.count("sha1.bytes", ((byte[]) val).length);
                     md.update((byte[]) val);
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    byte[] bytes = ((String) val).getBytes(StandardCharsets.UTF_8);
+                    Trace.count("sha1.bytes", bytes.length);
+                    md.update(bytes);
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
@@ -96,7 +100,10 @@ class Utils {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] result = Files.readAllBytes(file.toPath());
+            Trace.count("files.read");
+            Trace.count("files.bytesRead", result.length);
+            return result;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -121,12 +128,16 @@ class Utils {
             }
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            Trace.count("files.written");
             for (Object obj : contents) {
+                byte[] bytes;
                 if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
+                    bytes = (byte[]) obj;
                 } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+                    bytes = ((String) obj).getBytes(StandardCharsets.UTF_8);
                 }
+                Trace.count("files.bytesWritten", bytes.length);
+                str.write(bytes);
             }
             str.close();
         } catch (IOException | ClassCastException excp) {
@@ -138,7 +149,9 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
-        try {
+        try (Trace.Span span = Trace.span("deserialize")) {
+            Trace.count("files.read");
+            Trace.count("files.bytesRead", file.length());
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
@@ -170,12 +183,15 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
-        String[] files = dir.list(PLAIN_FILES);
-        if (files == null) {
-            return null;
-        } else {
-            Arrays.sort(files);
-            return Arrays.asList(files);
+        try (Trace.Span span = Trace.span("listDirectory")) {
+            String[] files = dir.list(PLAIN_FILES);
+            if (files == null) {
+                return null;
+            } else {
+                Trace.count("listDirectory.entries", files.length);
+                Arrays.sort(files);
+                return Arrays.asList(files);
+            }
         }
     }
 
@@ -207,7 +223,7 @@ class Utils {
 
     /** Returns a byte array containing the serialized contents of OBJ. */
     static byte[] serialize(Serializable obj) {
-        try {
+        try (Trace.Span span = Trace.span("serialize")) {
             ByteArrayOutputStream stream = new ByteArrayOutputStream();
             ObjectOutputStream objectStream = new ObjectOutputStream(stream);
             objectStream.writeObject(obj);
@@ -218,6 +234,21 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try (Trace.Span span = Trace.span("deserialize");
+             ObjectInputStream in =
+                 new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */
@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Main.*;
+
+/** The view of the working directory maintained by a running watcher (see
+ *  Watcher): the plain files present, each with the sequence number of the
+ *  last change seen to it.  EPOCH identifies the watcher process, so that
+ *  sequence numbers from different runs are never compared.
+ *  @author
+ */
+public class WatchState implements Dumpable {
+
+    public long epoch;
+
+    public long sequence;
+
+    public Map<String, Long> files;
+
+    public WatchState() {};
+
+    public WatchState(long epoch) {
+        this.epoch = epoch;
+        files = new HashMap<>();
+    }
+
+    /** Record a change to file NAME. */
+    public void touch(String name) {
+        sequence += 1;
+        if (Utils.join(CWD, name).isFile()) {
+            files.put(name, sequence);
+        } else {
+            files.remove(name);
+        }
+    }
+
+    /** Forget everything and list the working directory again, treating
+     *  every file as changed. */
+    public void rescan() {
+        sequence += 1;
+        files.clear();
+        List<String> names = Utils.plainFilenamesIn(CWD);
+        if (names != null) {
+            for (String name : names) {
+                files.put(name, sequence);
+            }
+        }
+    }
+
+    public void saveToFile() throws IOException {
+        // Write and rename, so readers never see a partial state
+        File tmpFile = Utils.join(GITLET, "watch-state.tmp");
+        WatchState newState = new WatchState();
+        newState.epoch = epoch;
+        newState.sequence = sequence;
+        newState.files = files;
+        Utils.writeObject(tmpFile, newState);
+        Files.move(tmpFile.toPath(), GITLET_WATCH_STATE.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static WatchState readFromFile() {
+        return Utils.readObject(GITLET_WATCH_STATE, WatchState.class);
+    }
+
+    @Override
+    public void dump() {
+        System.out.println("Epoch: " + epoch);
+        System.out.println("Sequence: " + sequence);
+        System.out.println("Files: " + files.toString());
+    }
+}
@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Main.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/** The file-system watcher behind "gitlet watch".  While it runs, it keeps a
+ *  WatchState in GITLET_WATCH_STATE up to date from WatchService events, so
+ *  that other commands (through WorkingTree) need neither list the working
+ *  directory nor rehash files that have not changed.
+ *
+ *  The watcher holds a lock on GITLET_WATCH_LOCK while it runs, which is how
+ *  other commands know its state can be trusted.  Because events arrive
+ *  asynchronously, a command first synchronizes with it by creating a
+ *  "cookie" file in GITLET_WATCH_COOKIES: the watcher deletes the cookie only
+ *  after saving a state that includes every event that preceded it.  If
+ *  events are lost (OVERFLOW), the watcher rescans the whole directory.
+ *  @author
+ */
+class Watcher {
+
+    /** Name of the cookie that asks the watcher to stop. */
+    static final String STOP_COOKIE = "stop";
+
+    /** Run the watcher until the repository disappears or it is asked to
+     *  stop. */
+    static void run() throws IOException {
+        try (FileChannel lockChannel = openLockChannel();
+             WatchService service = FileSystems.getDefault().newWatchService()) {
+            FileLock lock = lockChannel.tryLock();
+            if (lock == null) {
+                exitWithError("A watcher is already running.");
+            }
+            GITLET_WATCH_COOKIES.mkdir();
+            for (File cookie : GITLET_WATCH_COOKIES.listFiles()) {
+                cookie.delete();
+            }
+
+            WatchKey cwdKey = CWD.toPath().register(service,
+                    ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            GITLET_WATCH_COOKIES.toPath().register(service, ENTRY_CREATE);
+
+            WatchState state = new WatchState(System.nanoTime() ^ ProcessHandle.current().pid());
+            state.rescan();
+            state.saveToFile();
+
+            boolean stop = false;
+            while (!stop && GITLET.isDirectory() && cwdKey.isValid()) {
+                WatchKey key = service.poll(1, TimeUnit.SECONDS);
+                List<File> cookies = new ArrayList<>();
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            Trace.count("watch.overflows");
+                            state.rescan();
+                            continue;
+                        }
+                        String name = ((Path) event.context()).getFileName().toString();
+                        if (key == cwdKey) {
+                            state.touch(name);
+                        } else {
+                            cookies.add(Utils.join(GITLET_WATCH_COOKIES, name));
+                            stop = stop || name.equals(STOP_COOKIE);
+                        }
+                    }
+                    key.reset();
+                    // Gather whatever else is already queued into this batch
+                    key = service.poll(5, TimeUnit.MILLISECONDS);
+                }
+                state.saveToFile();
+                for (File cookie : cookies) {
+                    cookie.delete();
+                }
+            }
+            lock.release();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        GITLET_WATCH_STATE.delete();
+    }
+
+    /** Ask a running watcher to stop, and wait for it to do so. */
+    static void stop() throws IOException {
+        if (!isRunning()) {
+            exitWithError("No watcher is running.");
+        }
+        Utils.join(GITLET_WATCH_COOKIES, STOP_COOKIE).createNewFile();
+        while (isRunning()) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException excp) {
+                return;
+            }
+        }
+    }
+
+    /** Return true iff a watcher is running on this repository. */
+    static boolean isRunning() {
+        if (!GITLET_WATCH_STATE.exists()) {
+            return false;
+        }
+        try (FileChannel lockChannel = openLockChannel()) {
+            FileLock lock = lockChannel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return a channel on the lock file. */
+    private static FileChannel openLockChannel() throws IOException {
+        return FileChannel.open(GITLET_WATCH_LOCK.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+}
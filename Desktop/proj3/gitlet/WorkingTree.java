@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Main.*;
+
+/** Queries about the files in the working directory.  When a watcher (see
+ *  Watcher) is running, the list of files comes from its WatchState and
+ *  the SHA-1s of files it has not seen change come from the HashCache, so
+ *  the cost of a query is proportional to the number of files changed
+ *  since the last one.  Otherwise, or if the watcher does not answer
+ *  promptly, the directory is listed and files are hashed as usual.
+ *  @author
+ */
+class WorkingTree {
+
+    /** How long to wait for the watcher to acknowledge a cookie before
+     *  falling back to scanning, in milliseconds. */
+    private static final long COOKIE_TIMEOUT = 1000;
+
+    /** Return the names of the plain files in the working directory, in
+     *  lexicographic order. */
+    static List<String> fileNames() {
+        load();
+        if (_state == null) {
+            return Utils.plainFilenamesIn(CWD);
+        }
+        List<String> result = new ArrayList<>(_state.files.keySet());
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the SHA-1 of the contents of working file NAME, or null if
+     *  there is no such plain file. */
+    static String hash(String name) {
+        load();
+        if (_state == null) {
+            File file = Utils.join(CWD, name);
+            return file.isFile() ? Utils.sha1(Utils.readContents(file)) : null;
+        }
+        Long changed = _state.files.get(name);
+        if (changed == null) {
+            return null;
+        }
+        String result = _cache.hashes.get(name);
+        if (result != null && changed <= _cache.sequence) {
+            Trace.count("watch.cacheHits");
+            return result;
+        }
+        Trace.count("watch.rehashes");
+        File file = Utils.join(CWD, name);
+        if (!file.isFile()) {
+            return null;
+        }
+        result = Utils.sha1(Utils.readContents(file));
+        _cache.hashes.put(name, result);
+        _rehashed.add(name);
+        _dirty = true;
+        return result;
+    }
+
+    /** Save the hash cache if it has changed, and forget the watcher's
+     *  state, which the next command must fetch afresh.  The cache is
+     *  brought up to the watcher's sequence number, so it must first lose
+     *  the hashes of files changed since its own that this command did not
+     *  read again. */
+    static void finish() {
+        if (_state != null && _dirty) {
+            _cache.hashes.keySet().removeIf(name -> {
+                Long changed = _state.files.get(name);
+                return changed == null
+                    || (changed > _cache.sequence && !_rehashed.contains(name));
+            });
+            _cache.sequence = _state.sequence;
+            _cache.saveToFile();
+        }
+        _rehashed.clear();
+        _loaded = _dirty = false;
+        _state = null;
+        _cache = null;
+    }
+
+    /** Synchronize with the watcher, if any, and load its state and the
+     *  hash cache.  Does nothing after the first call. */
+    private static void load() {
+        if (_loaded) {
+            return;
+        }
+        _loaded = true;
+        if (!Watcher.isRunning()) {
+            return;
+        }
+        try (Trace.Span span = Trace.span("watch.sync")) {
+            File cookie = Utils.join(GITLET_WATCH_COOKIES,
+                    Long.toHexString(System.nanoTime()) + "-" + ProcessHandle.current().pid());
+            cookie.createNewFile();
+            long deadline = System.currentTimeMillis() + COOKIE_TIMEOUT;
+            while (cookie.exists()) {
+                if (System.currentTimeMillis() > deadline) {
+                    cookie.delete();
+                    return;
+                }
+                Thread.sleep(1);
+            }
+            _state = WatchState.readFromFile();
+        } catch (IOException | IllegalArgumentException excp) {
+            _state = null;
+            return;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (GITLET_HASH_CACHE.exists()) {
+            _cache = HashCache.readFromFile();
+        }
+        if (_cache == null || _cache.epoch != _state.epoch) {
+            _cache = new HashCache(_state.epoch);
+            _dirty = true;
+        }
+    }
+
+    /** True once load has been called. */
+    private static boolean _loaded;
+
+    /** The watcher's state, or null if there is no usable watcher. */
+    private static WatchState _state;
+
+    /** Cached hashes, when _state is not null. */
+    private static HashCache _cache;
+
+    /** Files hashed afresh by this command. */
+    private static final Set<String> _rehashed = new HashSet<>();
+
+    /** True iff _cache has changed since it was read. */
+    private static boolean _dirty;
+}
@@ -0,0 +1,181 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static gitlet.Main.*;
+
+/** The worktrees of a repository.  Besides the main one, a repository may
+ *  have linked worktrees (see "worktree add"), each a directory with its
+ *  own .gitlet holding its own metadata (head and current branch) and
+ *  stage.  The folders and files in SHARED of a linked worktree's .gitlet
+ *  are symbolic links into the main .gitlet, to which GITLET_COMMON also
+ *  links, so all worktrees use one object store.  The branches are those
+ *  of the main metadata, and GITLET_WORKTREES, also shared, lists the root
+ *  directories of the linked worktrees.  No branch may be checked out in
+ *  two worktrees at once.
+ *  @author
+ */
+class Worktrees {
+
+    /** Parts of a .gitlet directory that linked worktrees share. */
+    static final String[] SHARED = {
+        "blobs", "chunked", "chunks", "commits", "manifests", "changed-paths", "blame", "sketches",
+        "promised", "worktrees", "remotes", "promisor", "bitmaps", "objects.db"
+    };
+
+    /** The number of folders at the start of SHARED; the rest are files. */
+    private static final int SHARED_FOLDERS = 10;
+
+    /** Return true iff this is a linked worktree. */
+    static boolean isLinked() {
+        return GITLET_COMMON.exists();
+    }
+
+    /** Return the .gitlet directory of the main worktree. */
+    static File common() {
+        return isLinked() ? GITLET_COMMON : GITLET;
+    }
+
+    /** Return true iff there is more than one worktree, so that others may
+     *  change the branches while a command runs. */
+    static boolean shared() {
+        String[] names = GITLET_WORKTREES.list();
+        return isLinked() || (names != null && names.length > 0);
+    }
+
+    /** Take the lock that serializes updates of the shared branches and of
+     *  which worktree has which branch checked out, and return a Lock
+     *  that releases it when closed.  A process may take the lock again
+     *  while it holds it, as a command holding it while it checks out a
+     *  branch does when it saves the metadata; it is released when the
+     *  outermost Lock is closed. */
+    static Lock lock() {
+        if (_lockDepth == 0) {
+            try {
+                _lockChannel = FileChannel.open(Utils.join(common(), "worktrees.lock").toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                _lockChannel.lock();
+            } catch (IOException excp) {
+                throw new UncheckedIOException(excp);
+            }
+        }
+        _lockDepth += 1;
+        return new Lock();
+    }
+
+    /** A hold on the lock taken by lock(). */
+    static class Lock implements AutoCloseable {
+        @Override
+        public void close() {
+            _lockDepth -= 1;
+            if (_lockDepth == 0) {
+                try {
+                    _lockChannel.close();
+                } catch (IOException excp) {
+                    throw new UncheckedIOException(excp);
+                } finally {
+                    _lockChannel = null;
+                }
+            }
+        }
+    }
+
+    /** Return a map from the root directory of each worktree, the main one
+     *  first, to the branch checked out there.  Linked worktrees whose
+     *  directories have gone are forgotten. */
+    static Map<String, String> branches() {
+        Map<String, String> result = new LinkedHashMap<>();
+        File main = Utils.join(common(), "metadata");
+        result.put(rootOf(common()), Utils.readObject(main, Metadata.class).currentBranch);
+        String[] names = GITLET_WORKTREES.list();
+        if (names == null) {
+            return result;
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            File entry = Utils.join(GITLET_WORKTREES, name);
+            String root = Utils.readContentsAsString(entry);
+            File metadata = Utils.join(root, ".gitlet", "metadata");
+            if (!metadata.isFile()) {
+                entry.delete();
+                continue;
+            }
+            result.put(root, Utils.readObject(metadata, Metadata.class).currentBranch);
+        }
+        return result;
+    }
+
+    /** Return the root directory of a worktree other than this one where
+     *  BRANCH is checked out, or null if there is none.  Unless the caller
+     *  holds lock() until it has saved the metadata of a checkout of
+     *  BRANCH, another worktree may check it out in between. */
+    static String holder(String branch) {
+        if (!shared()) {
+            return null;
+        }
+        String ours = rootOf(GITLET);
+        for (Map.Entry<String, String> entry : branches().entrySet()) {
+            if (!entry.getKey().equals(ours) && branch.equals(entry.getValue())) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /** Create a linked worktree in the new directory ROOT with BRANCH, which
+     *  METADATA names, checked out. */
+    static void add(File root, String branch, Metadata metadata) throws IOException {
+        File common = common().getCanonicalFile();
+        File gitlet = Utils.join(root, ".gitlet");
+        gitlet.mkdirs();
+        for (int i = 0; i < SHARED.length; i += 1) {
+            File target = Utils.join(common, SHARED[i]);
+            if (i < SHARED_FOLDERS) {
+                target.mkdir();
+            }
+            Files.createSymbolicLink(Utils.join(gitlet, SHARED[i]).toPath(), target.toPath());
+        }
+        Files.createSymbolicLink(Utils.join(gitlet, "common").toPath(), common.toPath());
+
+        String head = metadata.branchMap.get(branch);
+        Metadata local = new Metadata(head, branch);
+        local.branchMap = metadata.branchMap;
+        Utils.writeObject(Utils.join(gitlet, "metadata"), local);
+        Utils.writeObject(Utils.join(gitlet, "stage"), new Stage());
+        String rootPath = root.getCanonicalPath();
+        Utils.writeContents(Utils.join(GITLET_WORKTREES, Utils.sha1(rootPath)), rootPath);
+
+        // Check out the branch's files
+        Commit commit = Commit.readFromFile(head);
+        Promisor.prefetch(commit.fileMap.values());
+        try (Trace.Span span = Trace.span("worktree.write")) {
+            for (Map.Entry<String, String> entry : commit.fileMap.entrySet()) {
+                Utils.writeContents(Utils.join(root, entry.getKey()), Blob.read(entry.getValue()));
+            }
+        }
+    }
+
+    /** The channel of the lock held, if any. */
+    private static FileChannel _lockChannel;
+
+    /** The number of Locks of this process not yet closed. */
+    private static int _lockDepth;
+
+    /** Return the canonical path of the root of the worktree whose .gitlet
+     *  directory is GITLET. */
+    private static String rootOf(File gitlet) {
+        try {
+            return gitlet.getCanonicalFile().getParent();
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+}
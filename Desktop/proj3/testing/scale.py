@@ -0,0 +1,455 @@
+import sys, re, json, random
+from subprocess import Popen, PIPE, DEVNULL
+from os.path import abspath, dirname, exists, join
+from getopt import getopt, GetoptError
+from os import getcwd, mkdir, access, rename, wait4, waitstatus_to_exitcode, W_OK
+from shlex import quote
+from shutil import rmtree
+from statistics import median
+from tempfile import mkdtemp
+from time import perf_counter
+from math import log
+
+SHORT_USAGE = """\
+Usage: python3 scale.py OPTIONS
+
+   OPTIONS may include
+       --commits=N,...    Checkpoints (numbers of commits) at which to
+                          measure (default 1000,2000,4000).
+       --files=N          Number of files in the initial commit (default 50).
+       --seed=N           Seed for the workload generator (default 61).
+       --repeat=N         Runs of each probe command per checkpoint; the
+                          median is reported (default 3).
+       --max-exponent=X   Fail if a probe's time grows faster than
+                          commits**X (default 1.3).
+       --min-time=SEC     Do not judge probes whose time at the largest
+                          checkpoint, net of JVM start-up, is below SEC
+                          (default 0.05).
+       --progdir=DIR      Directory containing gitlet application.
+       --report=FILE      Also write the measurements to FILE as JSON.
+       --keep             Keep the scratch repository.
+"""
+
+USAGE = SHORT_USAGE + """\
+
+Generates a synthetic history with file churn (edits, additions, deletions
+and renames) and topic branches that are merged back into master, replays
+it through gitlet (using "gitlet --batch" to build the history in one JVM),
+and at each checkpoint runs each probe command in a fresh JVM, recording
+its wall time, peak resident set size and bytes read and written.
+
+For each probe, the growth exponent of its time (net of JVM start-up) with
+the number of commits is estimated by a least-squares fit on a log-log
+scale.  Exits with status 1 if any exponent exceeds --max-exponent, so that
+scaling regressions in commands such as global-log, find and merge (via
+findSplitPoint) are caught."""
+
+JAVA_COMMAND = ["java", "-ea"]
+
+# Name of a branch left at the initial commit, so that merging it walks
+# the whole history in findSplitPoint without changing anything.
+BASE_BRANCH = "scale-base"
+
+def Usage():
+    print(SHORT_USAGE, file=sys.stderr)
+    sys.exit(1)
+
+# Vocabulary for random lines.
+WORDS = ["int", "return", "if", "else", "for", "while", "static", "void",
+         "String", "File", "commit", "blob", "stage", "branch", "merge",
+         "=", "+=", "==", "(", ")", "{", "}", ";", "x", "y", "count", "i"]
+
+class Workload:
+    """Generator for a synthetic history, emitted as script lines for
+    replay.  Keeps enough of a model of the repository (the files present on
+    master) to generate only valid commands."""
+
+    def __init__(self, seed, files):
+        self.rand = random.Random(seed)
+        self.num_files = 0
+        self.files = []
+        self.commits = 0
+        self.topics = 0
+        self.initial_files = files
+
+    def new_name(self):
+        self.num_files += 1
+        return "file{:06d}.txt".format(self.num_files)
+
+    def seed(self):
+        return self.rand.getrandbits(48)
+
+    def cmd(self, *args):
+        return "\t".join((">",) + args)
+
+    def start(self):
+        """Script lines creating the repository and its initial commit."""
+        lines = [self.cmd("init")]
+        for i in range(self.initial_files):
+            name = self.new_name()
+            self.files.append(name)
+            lines.append("W\t{}\t{}\t{}".format(name, self.seed(),
+                                                self.rand.randint(10, 80)))
+            lines.append(self.cmd("add", name))
+        lines.append(self.cmd("commit", "initial import"))
+        lines.append(self.cmd("branch", BASE_BRANCH))
+        self.commits += 1
+        return lines
+
+    def commit(self, files, on_topic):
+        """Script lines for one commit to the files in FILES (which is
+        updated).  Topic commits only edit and add files."""
+        lines = []
+        changed = set()
+        for name in self.rand.sample(files,
+                                     min(len(files), self.rand.randint(1, 4))):
+            lines.append("E\t{}\t{}".format(name, self.seed()))
+            lines.append(self.cmd("add", name))
+            changed.add(name)
+        r = self.rand.random()
+        if r < 0.05 or len(files) < 2:
+            name = self.new_name()
+            files.append(name)
+            lines.append("W\t{}\t{}\t{}".format(name, self.seed(),
+                                                self.rand.randint(10, 80)))
+            lines.append(self.cmd("add", name))
+        elif not on_topic:
+            candidates = [f for f in files if f not in changed]
+            if candidates and r < 0.08:
+                victim = self.rand.choice(candidates)
+                files.remove(victim)
+                lines.append(self.cmd("rm", victim))
+            elif candidates and r < 0.11:
+                old = self.rand.choice(candidates)
+                new = self.new_name()
+                files[files.index(old)] = new
+                lines.append("M\t{}\t{}".format(old, new))
+                lines.append(self.cmd("rm", old))
+                lines.append(self.cmd("add", new))
+        self.commits += 1
+        lines.append(self.cmd("commit", "commit {}".format(self.commits)))
+        return lines
+
+    def topic(self):
+        """Script lines for a topic branch with a few commits, merged back
+        into master after master has moved on."""
+        self.topics += 1
+        branch = "topic-{}".format(self.topics)
+        lines = [self.cmd("branch", branch), self.cmd("checkout", branch)]
+        topic_files = list(self.files)
+        for i in range(self.rand.randint(1, 5)):
+            lines += self.commit(topic_files, True)
+        added = topic_files[len(self.files):]
+        lines.append(self.cmd("checkout", "master"))
+        for i in range(self.rand.randint(1, 3)):
+            lines += self.commit(self.files, False)
+        lines.append(self.cmd("merge", branch))
+        lines.append(self.cmd("rm-branch", branch))
+        self.commits += 1
+        self.files += added
+        return lines
+
+    def grow(self, target):
+        """Script lines that extend the history to at least TARGET
+        commits."""
+        lines = []
+        while self.commits < target:
+            if self.rand.random() < 1 / 25:
+                lines += self.topic()
+            else:
+                lines += self.commit(self.files, False)
+        return lines
+
+def random_line(rand):
+    """Return a line of random words from RAND."""
+    return " ".join(rand.choice(WORDS) for i in range(rand.randint(1, 10)))
+
+def write_lines(path, lines):
+    """Write LINES, each terminated by a newline, to file PATH."""
+    with open(path, "w") as out:
+        out.write("".join(line + "\n" for line in lines))
+
+def write_file(path, seed, lines):
+    """Write LINES random lines generated from SEED to file PATH."""
+    rand = random.Random(seed)
+    write_lines(path, [random_line(rand) for i in range(lines)])
+
+def edit_file(path, seed):
+    """Make a small random edit, chosen using SEED, to file PATH: each line
+    is replaced, preceded by an insertion or deleted with small
+    probability, and a line or two are appended, so that the file always
+    changes."""
+    rand = random.Random(seed)
+    with open(path) as inp:
+        old = inp.read().split("\n")
+    result = []
+    for line in old:
+        if not line:
+            continue
+        r = rand.randrange(100)
+        if r < 5:
+            result.append(random_line(rand))
+        elif r < 8:
+            result += [random_line(rand), line]
+        elif r >= 10:
+            result.append(line)
+    for i in range(rand.randint(1, 2)):
+        result.append(random_line(rand))
+    write_lines(path, result)
+
+def replay(lines, prog_dir, repo):
+    """Apply the script LINES to REPO.  Each line consists of
+    tab-separated fields and is one of
+
+        W NAME SEED LINES   Create file NAME with LINES random lines
+                            generated from SEED.
+        E NAME SEED         Edit file NAME (see edit_file).
+        M OLD NEW           Rename working file OLD to NEW.
+        > ARG...            Run gitlet with ARGs.
+
+    The gitlet commands are run by one "gitlet --batch" process, which is
+    given each command only once the file lines before it are done.
+    Returns the wall time in seconds and a summary with a line "COMMAND
+    COUNT MILLIS" per gitlet command.  Exits if a command fails."""
+    stats = {}
+    start = perf_counter()
+    proc = Popen(gitlet(prog_dir, "--batch"), cwd=repo, stdin=PIPE,
+                 stdout=PIPE, encoding="utf-8")
+    try:
+        for line in lines:
+            fields = line.split("\t")
+            if fields[0] == "W":
+                write_file(join(repo, fields[1]), int(fields[2]),
+                           int(fields[3]))
+            elif fields[0] == "E":
+                edit_file(join(repo, fields[1]), int(fields[2]))
+            elif fields[0] == "M":
+                rename(join(repo, fields[1]), join(repo, fields[2]))
+            elif fields[0] == ">":
+                began = perf_counter()
+                proc.stdin.write(" ".join(map(quote, fields[1:])) + "\n")
+                proc.stdin.flush()
+                result = proc.stdout.readline()
+                if not result or json.loads(result)["status"] != "ok":
+                    print("replay failed at {!r}: {}"
+                          .format(line, result.strip() or "no result"),
+                          file=sys.stderr)
+                    sys.exit(2)
+                stat = stats.setdefault(fields[1], [0, 0.0])
+                stat[0] += 1
+                stat[1] += perf_counter() - began
+            else:
+                raise ValueError("bad workload line: " + line)
+    finally:
+        proc.stdin.close()
+        proc.wait()
+    summary = "".join("{} {} {:.1f}\n".format(name, count, secs * 1000)
+                      for name, (count, secs) in sorted(stats.items()))
+    return perf_counter() - start, summary
+
+def run(args, cwd, capture=False):
+    """Run ARGS in directory CWD.  Returns (exit code, wall time in seconds,
+    peak RSS in KB, bytes read, bytes written, standard error output if
+    CAPTURE)."""
+    io0 = proc_io()
+    start = perf_counter()
+    proc = Popen(args, cwd=cwd, stdin=DEVNULL, stdout=DEVNULL,
+                 stderr=PIPE if capture else DEVNULL)
+    out = proc.stderr.read().decode() if capture else ""
+    pid, status, usage = wait4(proc.pid, 0)
+    wall = perf_counter() - start
+    proc.returncode = waitstatus_to_exitcode(status)
+    io1 = proc_io()
+    if io0 is None or io1 is None:
+        read = written = None
+    else:
+        read = io1['rchar'] - io0['rchar'] - len(out)
+        written = io1['wchar'] - io0['wchar']
+    return proc.returncode, wall, usage.ru_maxrss, read, written, out
+
+def proc_io():
+    """Return the I/O counters of this process, which include those of the
+    children it has reaped, or None if they are unavailable."""
+    try:
+        result = {}
+        with open("/proc/self/io") as inp:
+            for line in inp:
+                key, val = line.split(":")
+                result[key] = int(val)
+        return result
+    except (OSError, ValueError):
+        return None
+
+def gitlet(prog_dir, *args):
+    return JAVA_COMMAND + ["-cp", prog_dir, "gitlet.Main"] + list(args)
+
+def exponent(xs, ys):
+    """Least-squares slope of log(YS) against log(XS)."""
+    lx = [log(x) for x in xs]
+    ly = [log(y) for y in ys]
+    mx = sum(lx) / len(lx)
+    my = sum(ly) / len(ly)
+    den = sum((x - mx) ** 2 for x in lx)
+    return sum((x - mx) * (y - my) for x, y in zip(lx, ly)) / den
+
+def probe(name, args, repo, prog_dir, repeat, before=None):
+    """Run gitlet with ARGS in REPO REPEAT times, calling BEFORE (if given)
+    before each run, and return the medians of the measurements."""
+    samples = []
+    for i in range(repeat):
+        if before:
+            before()
+        code, wall, rss, read, written, out = run(gitlet(prog_dir, *args),
+                                                  repo)
+        if code != 0:
+            print("probe {} failed with exit code {}".format(name, code),
+                  file=sys.stderr)
+            sys.exit(2)
+        samples.append((wall, rss, read, written))
+
+    def med(k):
+        vals = [s[k] for s in samples]
+        return None if None in vals else median(vals)
+    return { "wall": med(0), "rss_kb": med(1),
+             "read_bytes": med(2), "write_bytes": med(3) }
+
+def doScale(checkpoints, files, seed, repeat, prog_dir, max_exponent,
+            min_time, keep):
+    tmpdir = mkdtemp(prefix="gitlet-scale-")
+    repo = join(tmpdir, "repo")
+    mkdir(repo)
+    workload = Workload(seed, files)
+    results = { "checkpoints": [], "build": [], "probes": {} }
+    try:
+        baseline = median(run(gitlet(prog_dir), repo)[1]
+                          for i in range(repeat))
+        results["jvm_startup"] = baseline
+        lines = workload.start()
+        for n, target in enumerate(checkpoints):
+            lines += workload.grow(target)
+            wall, summary = replay(lines, prog_dir, repo)
+            lines = []
+            results["build"].append({ "commits": workload.commits,
+                                      "wall": wall, "summary": summary })
+            results["checkpoints"].append(workload.commits)
+            print("# {} commits (built in {:.1f}s)"
+                  .format(workload.commits, wall), flush=True)
+
+            target_file = join(repo, workload.files[0])
+            def touch():
+                with open(target_file, "a") as out:
+                    out.write("probe line\n")
+            measured = [
+                ("log", ["log"], None),
+                ("global-log", ["global-log"], None),
+                ("find", ["find", "commit 2"], None),
+                ("status", ["status"], None),
+                ("merge", ["merge", BASE_BRANCH], None),
+                ("add", ["add", workload.files[0]], touch),
+                ("checkout", ["checkout", "master"],
+                 lambda: run(gitlet(prog_dir, "checkout", BASE_BRANCH), repo)),
+            ]
+            for name, args, before in measured:
+                m = probe(name, args, repo, prog_dir, repeat, before)
+                results["probes"].setdefault(name, []).append(m)
+            def stage():
+                touch()
+                run(gitlet(prog_dir, "add", workload.files[0]), repo)
+            m = probe("commit", ["commit", "probe"], repo, prog_dir, repeat,
+                      stage)
+            workload.commits += repeat
+            results["probes"].setdefault("commit", []).append(m)
+    finally:
+        if keep:
+            print("# scratch repository kept in {}".format(repo))
+        else:
+            rmtree(tmpdir, ignore_errors=True)
+
+    ok = True
+    print()
+    print("{:12} {:>9} {:>9} {:>9} {:>11} {:>11}"
+          .format("command", "commits", "wall(s)", "rss(MB)", "read(KB)",
+                  "write(KB)"))
+    for name, ms in results["probes"].items():
+        for commits, m in zip(results["checkpoints"], ms):
+            print("{:12} {:9d} {:9.3f} {:9.1f} {:>11} {:>11}"
+                  .format(name, commits, m["wall"], m["rss_kb"] / 1024,
+                          kb(m["read_bytes"]), kb(m["write_bytes"])))
+        net = [max(m["wall"] - baseline, 1e-3) for m in ms]
+        if len(ms) < 2 or net[-1] < min_time:
+            verdict, exp = "not judged", None
+        else:
+            exp = exponent(results["checkpoints"], net)
+            verdict = "ok" if exp <= max_exponent else "SUPERLINEAR"
+            ok = ok and exp <= max_exponent
+        results.setdefault("exponents", {})[name] = exp
+        print("{:12} growth exponent {}: {}"
+              .format(name, "n/a" if exp is None else "{:.2f}".format(exp),
+                      verdict))
+    results["ok"] = ok
+    return ok, results
+
+def kb(n):
+    return "n/a" if n is None else "{:.0f}".format(n / 1024)
+
+if __name__ == "__main__":
+    checkpoints = [1000, 2000, 4000]
+    files = 50
+    seed = 61
+    repeat = 3
+    max_exponent = 1.3
+    min_time = 0.05
+    prog_dir = None
+    report = None
+    keep = False
+
+    try:
+        opts, args = \
+            getopt(sys.argv[1:], '',
+                   ['commits=', 'files=', 'seed=', 'repeat=',
+                    'max-exponent=', 'min-time=', 'progdir=', 'report=',
+                    'keep', 'help'])
+        if args:
+            Usage()
+        for opt, val in opts:
+            if opt == '--commits':
+                checkpoints = sorted(int(n) for n in val.split(','))
+            elif opt == '--files':
+                files = int(val)
+            elif opt == '--seed':
+                seed = int(val)
+            elif opt == '--repeat':
+                repeat = int(val)
+            elif opt == '--max-exponent':
+                max_exponent = float(val)
+            elif opt == '--min-time':
+                min_time = float(val)
+            elif opt == '--progdir':
+                prog_dir = abspath(val)
+            elif opt == '--report':
+                report = val
+            elif opt == '--keep':
+                keep = True
+            elif opt == '--help':
+                print(USAGE)
+                sys.exit(0)
+        if prog_dir is None:
+            prog_dir = abspath(getcwd())
+            k = 10
+            while k > 0 and access(prog_dir, W_OK):
+                k -= 1
+                if exists(join(prog_dir, 'gitlet', 'Main.class')):
+                    break
+                prog_dir = dirname(prog_dir)
+            else:
+                print("Could not find gitlet.Main.", file=sys.stderr)
+                sys.exit(1)
+    except (GetoptError, ValueError):
+        Usage()
+
+    ok, results = doScale(checkpoints, files, seed, repeat, prog_dir,
+                          max_exponent, min_time, keep)
+    if report:
+        with open(report, "w") as out:
+            json.dump(results, out, indent=2)
+    sys.exit(0 if ok else 1)
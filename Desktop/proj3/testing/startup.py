@@ -0,0 +1,177 @@
+import sys, json
+from os.path import abspath, dirname, exists, join
+from getopt import getopt, GetoptError
+from os import getcwd, mkdir, access, W_OK, X_OK
+from shutil import rmtree
+from statistics import median
+from tempfile import mkdtemp
+
+from scale import Workload, replay, run
+
+SHORT_USAGE = """\
+Usage: python3 startup.py OPTIONS
+
+   OPTIONS may include
+       --commits=N        Commits in the test repository (default 20).
+       --files=N          Number of files in its initial commit (default 50).
+       --repeat=N         Runs of each command in each mode; the median is
+                          reported (default 10).
+       --progdir=DIR      Directory containing gitlet application.
+       --jar=FILE         Jar built by "make jar" (default DIR/gitlet.jar).
+       --archive=FILE     AppCDS archive built by "make cds" (default
+                          DIR/gitlet.jsa).
+       --native=FILE      Executable built by "make native" (default
+                          DIR/gitlet-native).
+       --report=FILE      Also write the measurements to FILE as JSON.
+       --keep             Keep the scratch repository.
+"""
+
+USAGE = SHORT_USAGE + """\
+
+Measures the cold-start latency of small gitlet commands, each run as a
+fresh process, in up to three modes: a plain JVM ("jvm"), a JVM using the
+AppCDS archive ("cds"), and the GraalVM native executable ("native").
+Modes whose files have not been built are skipped.  The "none" command
+runs gitlet with no arguments, which only prints an error, and so
+measures start-up alone.  The test repository is built from the same
+synthetic workload as scale.py."""
+
+JAVA_COMMAND = ["java"]
+
+def Usage():
+    print(SHORT_USAGE, file=sys.stderr)
+    sys.exit(1)
+
+def modes(prog_dir, jar, archive, native):
+    """Return a list of (name, command prefix) for the modes that have been
+    built."""
+    result = [("jvm", JAVA_COMMAND + ["-cp", prog_dir, "gitlet.Main"])]
+    if exists(jar) and exists(archive):
+        result.append(("cds", JAVA_COMMAND
+                       + ["-XX:SharedArchiveFile=" + archive, "-cp", jar,
+                          "gitlet.Main"]))
+    else:
+        print("# no {} or {}: skipping cds (run 'make cds')"
+              .format(jar, archive))
+    if access(native, X_OK):
+        result.append(("native", [native]))
+    else:
+        print("# no {}: skipping native (run 'make native')".format(native))
+    return result
+
+def doStartup(commits, files, repeat, prog_dir, jar, archive, native, keep):
+    tmpdir = mkdtemp(prefix="gitlet-startup-")
+    repo = join(tmpdir, "repo")
+    mkdir(repo)
+    workload = Workload(61, files)
+    results = { "modes": {} }
+    try:
+        replay(workload.start() + workload.grow(commits), prog_dir, repo)
+
+        target_file = join(repo, workload.files[0])
+        for mode, prefix in modes(prog_dir, jar, archive, native):
+            def touch():
+                with open(target_file, "a") as out:
+                    out.write("probe line\n")
+            # Each entry: name, arguments for run I, and what to do first
+            measured = [
+                ("none", lambda i: [], None),
+                ("status", lambda i: ["status"], None),
+                ("log", lambda i: ["log"], None),
+                ("branch", lambda i: ["branch", "{}-{}".format(mode, i)],
+                 None),
+                ("add", lambda i: ["add", workload.files[0]], touch),
+            ]
+            for name, args, before in measured:
+                samples = []
+                for i in range(repeat):
+                    if before:
+                        before()
+                    code, wall, rss, read, written, out = \
+                        run(prefix + args(i), repo)
+                    if code != 0:
+                        print("{} {} failed with exit code {}"
+                              .format(mode, name, code), file=sys.stderr)
+                        sys.exit(2)
+                    samples.append((wall, rss))
+                results["modes"].setdefault(mode, {})[name] = {
+                    "wall": median(s[0] for s in samples),
+                    "rss_kb": median(s[1] for s in samples) }
+    finally:
+        if keep:
+            print("# scratch repository kept in {}".format(repo))
+        else:
+            rmtree(tmpdir, ignore_errors=True)
+
+    names = [name for name in results["modes"]["jvm"]]
+    print("{:10} {:8} {:>9} {:>9} {:>9}"
+          .format("command", "mode", "wall(ms)", "rss(MB)", "speedup"))
+    for name in names:
+        base = results["modes"]["jvm"][name]["wall"]
+        for mode, measurements in results["modes"].items():
+            m = measurements[name]
+            print("{:10} {:8} {:9.1f} {:9.1f} {:>9}"
+                  .format(name, mode, m["wall"] * 1000, m["rss_kb"] / 1024,
+                          "{:.1f}x".format(base / m["wall"])))
+    return results
+
+if __name__ == "__main__":
+    commits = 20
+    files = 50
+    repeat = 10
+    prog_dir = None
+    jar = archive = native = None
+    report = None
+    keep = False
+
+    try:
+        opts, args = \
+            getopt(sys.argv[1:], '',
+                   ['commits=', 'files=', 'repeat=', 'progdir=', 'jar=',
+                    'archive=', 'native=', 'report=', 'keep', 'help'])
+        if args:
+            Usage()
+        for opt, val in opts:
+            if opt == '--commits':
+                commits = int(val)
+            elif opt == '--files':
+                files = int(val)
+            elif opt == '--repeat':
+                repeat = int(val)
+            elif opt == '--progdir':
+                prog_dir = abspath(val)
+            elif opt == '--jar':
+                jar = abspath(val)
+            elif opt == '--archive':
+                archive = abspath(val)
+            elif opt == '--native':
+                native = abspath(val)
+            elif opt == '--report':
+                report = val
+            elif opt == '--keep':
+                keep = True
+            elif opt == '--help':
+                print(USAGE)
+                sys.exit(0)
+        if prog_dir is None:
+            prog_dir = abspath(getcwd())
+            k = 10
+            while k > 0 and access(prog_dir, W_OK):
+                k -= 1
+                if exists(join(prog_dir, 'gitlet', 'Main.class')):
+                    break
+                prog_dir = dirname(prog_dir)
+            else:
+                print("Could not find gitlet.Main.", file=sys.stderr)
+                sys.exit(1)
+    except (GetoptError, ValueError):
+        Usage()
+
+    jar = jar or join(prog_dir, "gitlet.jar")
+    archive = archive or join(prog_dir, "gitlet.jsa")
+    native = native or join(prog_dir, "gitlet-native")
+    results = doStartup(commits, files, repeat, prog_dir, jar, archive,
+                        native, keep)
+    if report:
+        with open(report, "w") as out:
+            json.dump(results, out, indent=2)
@@ -202,9 +202,21 @@ def canonicalize(s):
 def fileExists(f, dir):
     return exists(join(dir, f))
 
+def binaryContents(filename):
+    try:
+        with open(filename, 'rb') as inp:
+            return inp.read()
+    except FileNotFoundError:
+        return None
+
 def correctFileOutput(name, expected, dir):
+    stdBytes = binaryContents(join(src_dir, expected))
+    try:
+        stdData = canonicalize(None if stdBytes is None else stdBytes.decode('utf-8'))
+    except UnicodeDecodeError:
+        # Not text (an archive, say): compare the bytes exactly
+        return binaryContents(join(dir, name)) == stdBytes
     userData = canonicalize(contents(join(dir, name)))
-    stdData = canonicalize(contents(join(src_dir, expected)))
     return userData == stdData
 
 def correctProgramOutput(expected, actual, last_groups, is_regexp):